@@ -1,5 +1,13 @@
 package core;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class Builtin {
 	public static void loadBuiltinFunctions(Environment global) {
 		// Constants
@@ -9,9 +17,14 @@ public class Builtin {
 		// Database providers global constants
 		global.define("_MYSQL", 1, VarType.CONSTANT);
 		global.define("_MSSQL", 2, VarType.CONSTANT);
+		global.define("_H2", 3, VarType.CONSTANT);
+		global.define("_SQLITE", 4, VarType.CONSTANT);
 				
 		global.define("empty", new Environment(), VarType.CONSTANT);		
 		global.define("array", new RuntimeArray(), VarType.CONSTANT);
+		global.define("bigarray", new RuntimeBigArray(), VarType.CONSTANT);
+		global.define("vector", new RuntimeVector(), VarType.CONSTANT);
+		global.define("stringbuilder", new RuntimeStringBuilder(), VarType.CONSTANT);
 		global.define("connection", new RuntimeConnection(), VarType.CONSTANT);
 		/**********************************************************************
 		 * Alltrim
@@ -113,7 +126,231 @@ public class Builtin {
 				return tick - (Double)arguments[0].value;
 			}
 			
-		}, VarType.CONSTANT);		
+		}, VarType.CONSTANT);
+		/**********************************************************************
+		 * Use: opens a DBF table, use("file.dbf"[, readonly: .t.])
+		 **********************************************************************/
+		global.define("use", new BuiltinFunction() {
+			
+			@Override
+			public int arity() {
+				return 1;
+			}
+			
+			@Override
+			public String[] getParamInfo() {
+				String[] info = {"String"};
+				return info;
+			}
+			
+			// the readonly: option is checked below.
+			@Override
+			public boolean validateArguments() {
+				return false;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, ArgValue[] arguments) {
+				if (arguments == null || arguments.length == 0 || !(arguments[0].value instanceof String)) {
+					throw new RuntimeError(callee.token, "Expect the table file name.");
+				}
+				boolean readonly = false;
+				for (int i = 1; i < arguments.length; i++) {
+					if (!arguments[i].alias.equalsIgnoreCase("readonly") || !(arguments[i].value instanceof Boolean)) {
+						throw new RuntimeError(arguments[i].name, "Invalid option, expecting readonly: .t./.f.");
+					}
+					readonly = (Boolean)arguments[i].value;
+				}
+				try {
+					DbfCursor table = DbfCursor.open((String)arguments[0].value, readonly);
+					table.setCallee(callee);
+					return table;
+				} catch (IOException e) {
+					throw new RuntimeError(callee.token, "Cannot open table: " + e.getMessage());
+				}
+			}
+
+		}, VarType.CONSTANT);
+		/**********************************************************************
+		 * Sys: system settings, sys(3054[, level]) shows Rushmore plans.
+		 **********************************************************************/
+		global.define("sys", new BuiltinFunction() {
+
+			@Override
+			public int arity() {
+				return 1;
+			}
+
+			@Override
+			public String[] getParamInfo() {
+				String[] info = {"Double"};
+				return info;
+			}
+
+			// the optional level is checked below.
+			@Override
+			public boolean validateArguments() {
+				return false;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, ArgValue[] arguments) {
+				if (arguments == null || arguments.length == 0 || arguments.length > 2 || !(arguments[0].value instanceof Double)) {
+					throw new RuntimeError(callee.token, "Expect the setting number.");
+				}
+				if (((Double)arguments[0].value).intValue() != 3054) {
+					throw new RuntimeError(arguments[0].name, "Unsupported sys() setting: " + Interpreter.stringify(arguments[0].value));
+				}
+				if (arguments.length == 2) {
+					if (!(arguments[1].value instanceof Double)) {
+						throw new RuntimeError(arguments[1].name, "Expect the level as a number.");
+					}
+					Rushmore.diagnostics = ((Double)arguments[1].value).intValue();
+				}
+				return String.valueOf(Rushmore.diagnostics);
+			}
+
+		}, VarType.CONSTANT);
+		/**********************************************************************
+		 * Importcsv: reads a CSV file into a local cursor, or an array of rows
+		 * with array: .t. Options: header, delimiter, types, parallel, encoding.
+		 **********************************************************************/
+		global.define("importcsv", new BuiltinFunction() {
+
+			@Override
+			public int arity() {
+				return 1;
+			}
+
+			@Override
+			public String[] getParamInfo() {
+				String[] info = {"String"};
+				return info;
+			}
+
+			// the options are checked below.
+			@Override
+			public boolean validateArguments() {
+				return false;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, ArgValue[] arguments) {
+				if (arguments == null || arguments.length == 0 || !(arguments[0].value instanceof String)) {
+					throw new RuntimeError(callee.token, "Expect the CSV file name.");
+				}
+				boolean array = false;
+				Csv.Options options = new Csv.Options();
+				for (int i = 1; i < arguments.length; i++) {
+					if (arguments[i].alias.equalsIgnoreCase("array") && arguments[i].value instanceof Boolean)
+						array = (Boolean)arguments[i].value;
+					else
+						csvOption(options, arguments[i], true);
+				}
+				File file = new File((String)arguments[0].value);
+				try {
+					if (!array)
+						return Csv.read(file, options);
+					List<Object> rows = new ArrayList<>();
+					Csv.read(file, options, values -> rows.add(new RuntimeArray(new ArrayList<>(Arrays.asList(values)), null)));
+					return new RuntimeArray(rows, null);
+				} catch (IOException | IllegalArgumentException e) {
+					throw new RuntimeError(callee.token, "Cannot import CSV: " + e.getMessage());
+				}
+			}
+
+		}, VarType.CONSTANT);
+		/**********************************************************************
+		 * Exportcsv: writes a cursor, from its current row, or an array to a
+		 * CSV file and returns the number of rows. Options: header, delimiter,
+		 * encoding.
+		 **********************************************************************/
+		global.define("exportcsv", new BuiltinFunction() {
+
+			@Override
+			public int arity() {
+				return 2;
+			}
+
+			@Override
+			public String[] getParamInfo() {
+				String[] info = {"Object", "String"};
+				return info;
+			}
+
+			// the options are checked below.
+			@Override
+			public boolean validateArguments() {
+				return false;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, ArgValue[] arguments) {
+				if (arguments == null || arguments.length < 2 || !(arguments[1].value instanceof String)) {
+					throw new RuntimeError(callee.token, "Expect a cursor or an array and the CSV file name.");
+				}
+				Csv.Options options = new Csv.Options();
+				for (int i = 2; i < arguments.length; i++) {
+					csvOption(options, arguments[i], false);
+				}
+				File file = new File((String)arguments[1].value);
+				try {
+					if (arguments[0].value instanceof RuntimeCursor)
+						return (double)Csv.write((RuntimeCursor)arguments[0].value, file, options);
+					if (arguments[0].value instanceof RuntimeArray)
+						return (double)Csv.write((RuntimeArray)arguments[0].value, file, options);
+				} catch (IOException | SQLException e) {
+					throw new RuntimeError(callee.token, "Cannot export CSV: " + e.getMessage());
+				}
+				throw new RuntimeError(arguments[0].name, "Expect a cursor or an array to export.");
+			}
+
+		}, VarType.CONSTANT);
+	}
+	/**
+	 * Reads one named option of importcsv()/exportcsv().
+	 */
+	private static void csvOption(Csv.Options options, ArgValue argument, boolean reading) {
+		Object value = argument.value;
+		switch (argument.alias.toLowerCase()) {
+		case "header":
+			if (value instanceof Boolean) {
+				options.header = (Boolean)value;
+				return;
+			}
+			break;
+		case "delimiter":
+			if (value instanceof String && ((String)value).length() == 1 && ((String)value).charAt(0) < 128) {
+				options.delimiter = (byte)((String)value).charAt(0);
+				return;
+			}
+			break;
+		case "encoding":
+			if (value instanceof String) {
+				try {
+					options.charset = Charset.forName((String)value);
+					return;
+				} catch (IllegalArgumentException e) {
+					throw new RuntimeError(argument.name, "Unknown encoding: " + value);
+				}
+			}
+			break;
+		case "types":
+			if (reading && value instanceof String) {
+				options.types = (String)value;
+				return;
+			}
+			break;
+		case "parallel":
+			if (reading && value instanceof Boolean) {
+				options.parallel = (Boolean)value;
+				return;
+			}
+			break;
+		default:
+		}
+		throw new RuntimeError(argument.name, String.format("Invalid option `%s`, expecting header: .t./.f., delimiter: \",\", encoding: \"utf-8\"%s.",
+				argument.alias, reading ? ", types: \"NCL\", parallel: .t./.f., array: .t./.f." : ""));
 	}
 	/**
 	 * BuiltinFunction
@@ -6,4 +6,11 @@ public interface CallableObject {
 	String[] getParamInfo();
 	boolean validateArguments();
 	Object call(Interpreter interpreter, ArgValue[] arguments);
+	
+	// calls the object as named by `callee`. Objects shared between threads override
+	// this instead of keeping the callee from setCallee().
+	default Object call(Interpreter interpreter, Expr callee, ArgValue[] arguments) {
+		setCallee(callee);
+		return call(interpreter, arguments);
+	}
 }
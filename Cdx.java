@@ -0,0 +1,800 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cdx: the structural compound index (.cdx) opened along with a DBF table.
+ *
+ * A CDX file holds one B-tree per tag, in 512-byte pages. Interior nodes
+ * keep the highest key of each child page. Leaf nodes pack the record
+ * number and the duplicate/trailing byte counts of every key into a few
+ * bytes, and store the remaining key bytes from the end of the page
+ * backwards. The tag directory at offset 0 is another such tree, keyed by
+ * tag name.
+ *
+ * The file is memory-mapped and pages are decoded on demand. Writes
+ * through DbfCursor update every tag incrementally, splitting pages as
+ * they fill up.
+ */
+public class Cdx {
+	static final int PAGE = 512;
+	private static final int ROOT = 1;
+	private static final int LEAF = 2;
+
+	final File file;
+	final Map<String, Tag> tags = new LinkedHashMap<>();
+	private final FileChannel channel;
+	private final boolean readonly;
+	private final Charset charset;
+	private MappedByteBuffer map; // covers the file, and grows in extents past `end`.
+	private int end; // where the next new page goes.
+
+	private Cdx(File file, FileChannel channel, boolean readonly, Charset charset) {
+		this.file = file;
+		this.channel = channel;
+		this.readonly = readonly;
+		this.charset = charset;
+	}
+
+	static Cdx open(File file, DbfCursor table, boolean readonly) throws IOException {
+		FileChannel channel = readonly
+				? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+				: FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			Cdx cdx = new Cdx(file, channel, readonly, table.charset);
+			cdx.end = (int)channel.size();
+			cdx.remap(cdx.end);
+
+			// the directory's record numbers are the offsets of the tag headers.
+			Tag directory = cdx.new Tag("", 0, table);
+			Position at = directory.first(false);
+			while (at != null) {
+				String name = new String(at.key(), cdx.charset).trim().toLowerCase();
+				cdx.tags.put(name, cdx.new Tag(name, at.recno(), table));
+				if (!directory.move(at, false))
+					at = null;
+			}
+			return cdx;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	Tag tag(String name) {
+		Tag tag = tags.get(name);
+		if (tag == null)
+			throw new IllegalArgumentException(String.format("Index tag `%s` not found.", name));
+		return tag;
+	}
+
+	// keys of the current record in every tag, taken before it changes.
+	byte[][] keys(DbfCursor table) throws IOException {
+		byte[][] keys = new byte[tags.size()][];
+		int i = 0;
+		for (Tag tag : tags.values()) {
+			tag.checkMaintainable();
+			keys[i++] = tag.key(table);
+		}
+		return keys;
+	}
+
+	// moves the entries of record `recno` whose key changed since keys().
+	void update(DbfCursor table, byte[][] before, int recno) throws IOException {
+		int i = 0;
+		for (Tag tag : tags.values()) {
+			byte[] after = tag.key(table);
+			if (before == null) {
+				tag.insert(after, recno);
+			} else if (!Arrays.equals(before[i], after)) {
+				tag.delete(before[i], recno);
+				tag.insert(after, recno);
+			}
+			i++;
+		}
+	}
+
+	void checkMaintainable() throws IOException {
+		for (Tag tag : tags.values()) {
+			tag.checkMaintainable();
+		}
+	}
+
+	void close() throws IOException {
+		try {
+			if (!readonly) {
+				map.force();
+				if (channel.size() > end)
+					channel.truncate(end); // drops the unused part of the last extent.
+			}
+		} catch (IOException e) {
+			// some systems refuse while the file is mapped; the extra pages are never read.
+		} finally {
+			map = null;
+			channel.close();
+		}
+	}
+
+	// mapping READ_WRITE past the end of the file extends it with zeros.
+	private void remap(long size) throws IOException {
+		map = channel.map(readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, size);
+		map.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// new pages go at the end of the file, which grows by doubling so
+	// building a large tag maps the file a few times, not once per page.
+	private int allocate() throws IOException {
+		int offset = end;
+		end += PAGE;
+		if (end > map.capacity())
+			remap(Math.max(end, 2L * map.capacity()));
+		map.put(offset, new byte[PAGE]);
+		return offset;
+	}
+
+	/**
+	 * Tag: one index of the compound file, read from its 1024-byte header.
+	 */
+	class Tag {
+		final String name;
+		final int header;
+		final int keyLength;
+		final boolean unique;
+		final boolean descending;
+		final String expression;
+		final String filter;
+		final KeyExpr key; // null when the key expression is not supported.
+		final byte fill; // trailing byte removed by leaf compression.
+
+		Tag(String name, int header, DbfCursor table) {
+			this.name = name;
+			this.header = header;
+			this.keyLength = map.getShort(header + 12) & 0xFFFF;
+			int options = map.get(header + 14) & 0xFF;
+			this.unique = (options & 0x01) != 0;
+			this.descending = map.getShort(header + 502) != 0;
+			int filterLength = map.getShort(header + 506) & 0xFFFF;
+			int expressionLength = map.getShort(header + 510) & 0xFFFF;
+			this.expression = text(header + 512, expressionLength);
+			this.filter = (options & 0x08) != 0 ? text(header + 512 + expressionLength, filterLength) : "";
+
+			KeyExpr parsed = null;
+			try {
+				parsed = KeyExpr.parse(expression, table);
+			} catch (IllegalArgumentException e) {
+				// the tag can still be walked and searched, but not maintained.
+			}
+			this.key = parsed;
+			this.fill = parsed != null && parsed.kind() != RuntimeCursor.STRING ? 0 : (byte)' ';
+		}
+
+		private String text(int at, int length) {
+			byte[] raw = new byte[length];
+			map.get(at, raw);
+			int end = 0;
+			while (end < length && raw[end] != 0) end++;
+			return new String(raw, 0, end, charset).trim();
+		}
+
+		int root() {
+			return map.getInt(header);
+		}
+
+		void checkMaintainable() throws IOException {
+			if (key == null || unique || !filter.isEmpty())
+				throw new IOException(String.format("Index tag `%s` (%s) cannot be maintained, open the table readonly.",
+						name, expression));
+		}
+
+		// index key of the current record.
+		byte[] key(DbfCursor table) throws IOException {
+			if (key == null)
+				throw new IOException(String.format("Index tag `%s` has an unsupported key expression: %s", name, expression));
+			return encode(key.eval(table));
+		}
+
+		byte[] encode(Object value) {
+			byte[] bytes = new byte[keyLength];
+			if (value instanceof String) {
+				byte[] text = ((String)value).getBytes(charset);
+				System.arraycopy(text, 0, bytes, 0, Math.min(text.length, keyLength));
+				Arrays.fill(bytes, Math.min(text.length, keyLength), keyLength, (byte)' ');
+			} else if (value instanceof Double) {
+				putDouble(bytes, (Double)value);
+			} else if (value instanceof LocalDate) {
+				putDouble(bytes, ((LocalDate)value).toEpochDay() + DbfCursor.JULIAN_EPOCH);
+			} else if (value instanceof Boolean) {
+				bytes[0] = (Boolean)value ? (byte)'T' : (byte)'F';
+			} else {
+				Arrays.fill(bytes, fill);
+			}
+			return bytes;
+		}
+
+		// SEEK value: character searches compare only their own length, like SET EXACT OFF.
+		byte[] search(Object value) {
+			if (value instanceof String) {
+				if (key != null && key.kind() == KeyExpr.DATE)
+					return encode(LocalDate.parse((String)value));
+				byte[] text = ((String)value).getBytes(charset);
+				return text.length > keyLength ? Arrays.copyOf(text, keyLength) : text;
+			}
+			return encode(value);
+		}
+
+		/******************************************************************
+		 * Searching
+		 ******************************************************************/
+
+		// first entry in index order, or null for an empty tag.
+		Position first(boolean backward) throws IOException {
+			Node node = read(root());
+			while (!node.leaf()) {
+				node = read(node.children.get(backward ? node.size() - 1 : 0));
+			}
+			Position at = new Position(node, backward ? node.size() : -1);
+			return move(at, backward) ? at : null;
+		}
+
+		// moves one entry, following sibling pages; false past the last one.
+		boolean move(Position at, boolean backward) throws IOException {
+			at.slot += backward ? -1 : 1;
+			while (at.slot < 0 || at.slot >= at.leaf.size()) {
+				int next = backward ? at.leaf.left : at.leaf.right;
+				if (next == -1)
+					return false;
+				at.leaf = read(next);
+				at.slot = backward ? at.leaf.size() - 1 : 0;
+			}
+			return true;
+		}
+
+		// first entry whose key, cut to the search length, is >= `search`.
+		Position seek(byte[] search) throws IOException {
+			Node node = read(root());
+			while (!node.leaf()) {
+				int i = 0;
+				while (i < node.size() && compare(node.keys.get(i), search, search.length) < 0) i++;
+				if (i == node.size())
+					return null;
+				node = read(node.children.get(i));
+			}
+			int i = 0;
+			while (i < node.size() && compare(node.keys.get(i), search, search.length) < 0) i++;
+			Position at = new Position(node, i - 1);
+			return move(at, false) ? at : null;
+		}
+
+		// the entry of record `recno` with key `key`, or null.
+		Position locate(byte[] key, int recno) throws IOException {
+			Position at = seek(key);
+			while (at != null && compare(at.key(), key, keyLength) == 0) {
+				if (at.recno() == recno)
+					return at;
+				if (!move(at, false))
+					return null;
+			}
+			return null;
+		}
+
+		/**
+		 * Rushmore: the records whose key compares to `value` with `op`.
+		 * Null when the value does not fit the key. Character and date keys
+		 * are only compared for equality, like the interpreter does.
+		 */
+		BitSet scan(Category op, Object value, int count) throws IOException {
+			if (key == null || value == null)
+				return null;
+			int kind = key.kind();
+			byte[] bound;
+			if (kind == RuntimeCursor.NUMBER && value instanceof Double) {
+				bound = encode(value);
+			} else if (kind == RuntimeCursor.STRING && value instanceof String && op == Category.EQUAL
+					&& ((String)value).getBytes(charset).length <= keyLength) {
+				bound = encode(value);
+			} else if (kind == KeyExpr.DATE && value instanceof String && op == Category.EQUAL) {
+				try {
+					bound = encode(LocalDate.parse((String)value));
+				} catch (DateTimeParseException e) {
+					return null;
+				}
+			} else {
+				return null;
+			}
+
+			BitSet rows = new BitSet(count);
+			Position at = op == Category.LESS || op == Category.LESS_EQ ? first(false) : seek(bound);
+			while (at != null) {
+				int c = compare(at.key(), bound, keyLength);
+				if ((op == Category.EQUAL && c != 0) || (op == Category.LESS && c >= 0) || (op == Category.LESS_EQ && c > 0))
+					break;
+				if (op != Category.GREATER || c > 0)
+					rows.set(at.recno() - 1);
+				if (!move(at, false))
+					break;
+			}
+			return rows;
+		}
+
+		/******************************************************************
+		 * Maintenance
+		 ******************************************************************/
+
+		void insert(byte[] key, int recno) throws IOException {
+			Node root = read(root());
+			insert(root, key, recno);
+		}
+
+		// adds the entry under `node`, returns the node and its new right sibling if it split.
+		private Node[] insert(Node node, byte[] key, int recno) throws IOException {
+			if (node.leaf()) {
+				int i = 0;
+				while (i < node.size() && compare(node.keys.get(i), node.recnos.get(i), key, recno, keyLength) < 0) i++;
+				node.add(i, key, recno, 0);
+			} else {
+				int i = 0;
+				while (i < node.size() - 1 && compare(node.keys.get(i), node.recnos.get(i), key, recno, keyLength) < 0) i++;
+				Node[] parts = insert(read(node.children.get(i)), key, recno);
+				node.set(i, parts[0].last(), parts[0].lastRecno(), parts[0].offset);
+				if (parts.length == 2)
+					node.add(i + 1, parts[1].last(), parts[1].lastRecno(), parts[1].offset);
+			}
+			return store(node);
+		}
+
+		// writes `node`, splitting it in two when the entries do not fit in a page.
+		private Node[] store(Node node) throws IOException {
+			if (write(node))
+				return new Node[] {node};
+
+			Node right = new Node(allocate(), node.attributes & ~ROOT);
+			int half = node.size() / 2;
+			while (node.size() > half) {
+				right.add(right.size(), node.keys.remove(half), node.recnos.remove(half),
+						node.leaf() ? 0 : node.children.remove(half));
+			}
+			right.left = node.offset;
+			right.right = node.right;
+			if (node.right != -1)
+				map.putInt(node.right + 4, right.offset);
+			node.right = right.offset;
+
+			if ((node.attributes & ROOT) != 0) {
+				node.attributes &= ~ROOT;
+				Node root = new Node(allocate(), ROOT);
+				root.add(0, node.last(), node.lastRecno(), node.offset);
+				root.add(1, right.last(), right.lastRecno(), right.offset);
+				write(node);
+				write(right);
+				write(root);
+				map.putInt(header, root.offset);
+				return new Node[] {root};
+			}
+			write(node);
+			write(right);
+			return new Node[] {node, right};
+		}
+
+		// removes the entry; pages left empty stay linked and are skipped while walking.
+		void delete(byte[] key, int recno) throws IOException {
+			Position at = locate(key, recno);
+			if (at == null)
+				throw new IOException(String.format("Index tag `%s` is out of date, record %s not found.", name, recno));
+			at.leaf.remove(at.slot);
+			write(at.leaf);
+		}
+
+		/******************************************************************
+		 * Pages
+		 ******************************************************************/
+
+		Node read(int offset) {
+			Node node = new Node(offset, map.getShort(offset) & 0xFFFF);
+			int count = map.getShort(offset + 2) & 0xFFFF;
+			node.left = map.getInt(offset + 4);
+			node.right = map.getInt(offset + 8);
+
+			if (!node.leaf()) {
+				// key, then record number and child page as big-endian integers.
+				for (int i = 0; i < count; i++) {
+					int at = offset + 12 + i * (keyLength + 8);
+					byte[] key = new byte[keyLength];
+					map.get(at, key);
+					node.add(i, key, Integer.reverseBytes(map.getInt(at + keyLength)),
+							Integer.reverseBytes(map.getInt(at + keyLength + 4)));
+				}
+				return node;
+			}
+
+			long recnoMask = map.getInt(offset + 14) & 0xFFFFFFFFL;
+			int duplicateMask = map.get(offset + 18) & 0xFF;
+			int trailMask = map.get(offset + 19) & 0xFF;
+			int recnoBits = map.get(offset + 20);
+			int duplicateBits = map.get(offset + 21);
+			int bytes = map.get(offset + 23);
+			byte[] previous = new byte[keyLength];
+			int keyEnd = offset + PAGE;
+			for (int i = 0; i < count; i++) {
+				long info = 0;
+				for (int b = 0; b < bytes; b++) {
+					info |= (map.get(offset + 24 + i * bytes + b) & 0xFFL) << (8 * b);
+				}
+				int duplicates = (int)(info >>> recnoBits) & duplicateMask;
+				int trail = (int)(info >>> (recnoBits + duplicateBits)) & trailMask;
+				int length = keyLength - duplicates - trail;
+				keyEnd -= length;
+
+				byte[] key = new byte[keyLength];
+				System.arraycopy(previous, 0, key, 0, duplicates);
+				map.get(keyEnd, key, duplicates, length);
+				Arrays.fill(key, keyLength - trail, keyLength, fill);
+				node.add(i, key, (int)(info & recnoMask), 0);
+				previous = key;
+			}
+			return node;
+		}
+
+		// false when the entries do not fit in one page.
+		private boolean write(Node node) {
+			ByteBuffer page = ByteBuffer.allocate(PAGE).order(ByteOrder.LITTLE_ENDIAN);
+			page.putShort(0, (short)node.attributes);
+			page.putShort(2, (short)node.size());
+			page.putInt(4, node.left);
+			page.putInt(8, node.right);
+
+			if (!node.leaf()) {
+				if (12 + node.size() * (keyLength + 8) > PAGE)
+					return false;
+				for (int i = 0; i < node.size(); i++) {
+					int at = 12 + i * (keyLength + 8);
+					page.put(at, node.keys.get(i));
+					page.putInt(at + keyLength, Integer.reverseBytes(node.recnos.get(i)));
+					page.putInt(at + keyLength + 4, Integer.reverseBytes(node.children.get(i)));
+				}
+			} else {
+				int maxRecno = 1;
+				for (int recno : node.recnos) {
+					maxRecno = Math.max(maxRecno, recno);
+				}
+				int countBits = bitsFor(keyLength);
+				int bytes = (bitsFor(maxRecno) + 2 * countBits + 7) / 8;
+				int recnoBits = Math.min(32, bytes * 8 - 2 * countBits);
+
+				int free = PAGE - 24;
+				int keyEnd = PAGE;
+				byte[] previous = null;
+				for (int i = 0; i < node.size(); i++) {
+					byte[] key = node.keys.get(i);
+					int trail = 0;
+					while (trail < keyLength && key[keyLength - 1 - trail] == fill) trail++;
+					int duplicates = 0;
+					if (previous != null) {
+						while (duplicates < keyLength - trail && key[duplicates] == previous[duplicates]) duplicates++;
+					}
+					int length = keyLength - duplicates - trail;
+					free -= bytes + length;
+					if (free < 0)
+						return false;
+
+					long info = node.recnos.get(i) | (long)duplicates << recnoBits | (long)trail << (recnoBits + countBits);
+					for (int b = 0; b < bytes; b++) {
+						page.put(24 + i * bytes + b, (byte)(info >>> (8 * b)));
+					}
+					keyEnd -= length;
+					page.put(keyEnd, key, duplicates, length);
+					previous = key;
+				}
+				page.putShort(12, (short)free);
+				page.putInt(14, (int)((1L << recnoBits) - 1));
+				page.put(18, (byte)((1 << countBits) - 1));
+				page.put(19, (byte)((1 << countBits) - 1));
+				page.put(20, (byte)recnoBits);
+				page.put(21, (byte)countBits);
+				page.put(22, (byte)countBits);
+				page.put(23, (byte)bytes);
+			}
+			map.put(node.offset, page.array());
+			return true;
+		}
+	}
+
+	/**
+	 * Node: a decoded page. Interior entries point to the child page whose
+	 * highest key they hold.
+	 */
+	static class Node {
+		final int offset;
+		int attributes; // ROOT and/or LEAF.
+		int left = -1;
+		int right = -1;
+		final List<byte[]> keys = new ArrayList<>();
+		final List<Integer> recnos = new ArrayList<>();
+		final List<Integer> children = new ArrayList<>();
+
+		Node(int offset, int attributes) {
+			this.offset = offset;
+			this.attributes = attributes;
+		}
+
+		boolean leaf() {
+			return (attributes & LEAF) != 0;
+		}
+
+		int size() {
+			return keys.size();
+		}
+
+		byte[] last() {
+			return keys.get(keys.size() - 1);
+		}
+
+		int lastRecno() {
+			return recnos.get(recnos.size() - 1);
+		}
+
+		void add(int i, byte[] key, int recno, int child) {
+			keys.add(i, key);
+			recnos.add(i, recno);
+			if (!leaf())
+				children.add(i, child);
+		}
+
+		void set(int i, byte[] key, int recno, int child) {
+			keys.set(i, key);
+			recnos.set(i, recno);
+			children.set(i, child);
+		}
+
+		void remove(int i) {
+			keys.remove(i);
+			recnos.remove(i);
+			if (!leaf())
+				children.remove(i);
+		}
+	}
+
+	/**
+	 * Position: an entry of a leaf page, where an ordered cursor stands.
+	 */
+	static class Position {
+		Node leaf;
+		int slot;
+
+		Position(Node leaf, int slot) {
+			this.leaf = leaf;
+			this.slot = slot;
+		}
+
+		byte[] key() {
+			return leaf.keys.get(slot);
+		}
+
+		int recno() {
+			return leaf.recnos.get(slot);
+		}
+	}
+
+	/**********************************************************************
+	 * Keys
+	 **********************************************************************/
+
+	// unsigned byte order over the first `length` bytes.
+	static int compare(byte[] a, byte[] b, int length) {
+		for (int i = 0; i < length; i++) {
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0)
+				return c;
+		}
+		return 0;
+	}
+
+	// entries with the same key are ordered by record number.
+	static int compare(byte[] a, int recnoA, byte[] b, int recnoB, int length) {
+		int c = compare(a, b, length);
+		return c != 0 ? c : Integer.compare(recnoA, recnoB);
+	}
+
+	// numbers sort as bytes: the sign bit is flipped for positives, all bits for negatives.
+	private static void putDouble(byte[] key, double value) {
+		long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+		bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+		for (int i = 0; i < 8; i++) {
+			key[i] = (byte)(bits >>> (56 - 8 * i));
+		}
+	}
+
+	private static int bitsFor(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * KeyExpr: the part of the FoxPro expression language index keys use:
+	 * fields, string literals, `+` and UPPER, LOWER, ALLTRIM, LTRIM, RTRIM,
+	 * TRIM, DTOS and STR.
+	 */
+	abstract static class KeyExpr {
+		static final int DATE = 4;
+		private static final Pattern TOKEN = Pattern.compile("\\s*(?:([A-Za-z_][\\w.]*)|(\"[^\"]*\"|'[^']*')|(\\d+)|([()+,]))");
+
+		abstract Object eval(DbfCursor table) throws IOException;
+
+		// RuntimeCursor.NUMBER, STRING, BOOLEAN or DATE.
+		abstract int kind();
+
+		static KeyExpr parse(String text, DbfCursor table) {
+			List<String> tokens = new ArrayList<>();
+			Matcher m = TOKEN.matcher(text);
+			int at = 0;
+			while (at < text.trim().length()) {
+				if (!m.find(at) || m.start() != at)
+					throw new IllegalArgumentException("Unsupported key expression: " + text);
+				tokens.add(m.group().trim());
+				at = m.end();
+			}
+			if (tokens.isEmpty())
+				throw new IllegalArgumentException("Empty key expression.");
+			int[] next = {0};
+			KeyExpr expr = sum(tokens, next, table);
+			if (next[0] != tokens.size())
+				throw new IllegalArgumentException("Unsupported key expression: " + text);
+			return expr;
+		}
+
+		private static KeyExpr sum(List<String> tokens, int[] next, DbfCursor table) {
+			KeyExpr left = term(tokens, next, table);
+			while (next[0] < tokens.size() && tokens.get(next[0]).equals("+")) {
+				next[0]++;
+				KeyExpr l = left;
+				KeyExpr r = term(tokens, next, table);
+				if (l.kind() != r.kind() || (l.kind() != RuntimeCursor.STRING && l.kind() != RuntimeCursor.NUMBER))
+					throw new IllegalArgumentException("Unsupported operands for `+`.");
+				left = new KeyExpr() {
+					Object eval(DbfCursor t) throws IOException {
+						Object a = l.eval(t), b = r.eval(t);
+						if (a instanceof Double)
+							return (Double)a + (b == null ? 0 : (Double)b);
+						return (a == null ? "" : (String)a) + (b == null ? "" : (String)b);
+					}
+					int kind() { return l.kind(); }
+				};
+			}
+			return left;
+		}
+
+		private static KeyExpr term(List<String> tokens, int[] next, DbfCursor table) {
+			if (next[0] >= tokens.size())
+				throw new IllegalArgumentException("Incomplete key expression.");
+			String token = tokens.get(next[0]++);
+			if (token.equals("(")) {
+				KeyExpr inner = sum(tokens, next, table);
+				expect(tokens, next, ")");
+				return inner;
+			}
+			if (token.startsWith("\"") || token.startsWith("'")) {
+				String value = token.substring(1, token.length() - 1);
+				return constant(value, RuntimeCursor.STRING);
+			}
+			if (Character.isDigit(token.charAt(0)))
+				return constant(Double.valueOf(token), RuntimeCursor.NUMBER);
+			if (next[0] < tokens.size() && tokens.get(next[0]).equals("(")) {
+				next[0]++;
+				List<KeyExpr> args = new ArrayList<>();
+				if (!tokens.get(next[0]).equals(")")) {
+					args.add(sum(tokens, next, table));
+					while (tokens.get(next[0]).equals(",")) {
+						next[0]++;
+						args.add(sum(tokens, next, table));
+					}
+				}
+				expect(tokens, next, ")");
+				return function(token.toLowerCase(), args);
+			}
+			return field(token, table);
+		}
+
+		private static void expect(List<String> tokens, int[] next, String token) {
+			if (next[0] >= tokens.size() || !tokens.get(next[0]).equals(token))
+				throw new IllegalArgumentException("Expect `" + token + "` in key expression.");
+			next[0]++;
+		}
+
+		private static KeyExpr constant(Object value, int kind) {
+			return new KeyExpr() {
+				Object eval(DbfCursor t) { return value; }
+				int kind() { return kind; }
+			};
+		}
+
+		// `alias.field` refers to the table's own field.
+		private static KeyExpr field(String token, DbfCursor table) {
+			String name = token.substring(token.lastIndexOf('.') + 1).toLowerCase();
+			int index = table.columns.indexOf(name);
+			if (index == 0)
+				throw new IllegalArgumentException("Unknown field in key expression: " + token);
+			DbfCursor.Field field = table.fields[index - 1];
+			int kind = field.type == 'D' ? DATE : table.columns.kinds[index - 1];
+			if (kind == RuntimeCursor.OBJECT || field.type == 'T')
+				throw new IllegalArgumentException("Unsupported field type in key expression: " + token);
+			return new KeyExpr() {
+				Object eval(DbfCursor t) throws IOException { return t.keyValue(field); }
+				int kind() { return kind; }
+			};
+		}
+
+		private static KeyExpr function(String name, List<KeyExpr> args) {
+			if (args.isEmpty())
+				throw new IllegalArgumentException("Missing arguments for " + name + "().");
+			KeyExpr arg = args.get(0);
+			switch (name) {
+			case "upper": case "lower": case "alltrim": case "ltrim": case "rtrim": case "trim":
+				if (arg.kind() != RuntimeCursor.STRING)
+					throw new IllegalArgumentException(name + "() expects a character value.");
+				return new KeyExpr() {
+					Object eval(DbfCursor t) throws IOException {
+						String s = (String)arg.eval(t);
+						if (s == null) return null;
+						switch (name) {
+						case "upper": return s.toUpperCase();
+						case "lower": return s.toLowerCase();
+						case "alltrim": return s.strip();
+						case "ltrim": return s.stripLeading();
+						default: return s.stripTrailing();
+						}
+					}
+					int kind() { return RuntimeCursor.STRING; }
+				};
+			case "dtos":
+				if (arg.kind() != DATE)
+					throw new IllegalArgumentException("dtos() expects a date.");
+				return new KeyExpr() {
+					Object eval(DbfCursor t) throws IOException {
+						LocalDate date = (LocalDate)arg.eval(t);
+						return date == null ? "        " : String.format(Locale.ROOT, "%04d%02d%02d", date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+					}
+					int kind() { return RuntimeCursor.STRING; }
+				};
+			case "str":
+				if (arg.kind() != RuntimeCursor.NUMBER)
+					throw new IllegalArgumentException("str() expects a number.");
+				int length = args.size() > 1 ? constantInt(args.get(1)) : 10;
+				int decimals = args.size() > 2 ? constantInt(args.get(2)) : 0;
+				return new KeyExpr() {
+					Object eval(DbfCursor t) throws IOException {
+						Double n = (Double)arg.eval(t);
+						String s = String.format(Locale.ROOT, "%" + length + "." + decimals + "f", n == null ? 0.0 : n);
+						return s.length() > length ? "*".repeat(length) : s;
+					}
+					int kind() { return RuntimeCursor.STRING; }
+				};
+			default:
+				throw new IllegalArgumentException("Unsupported function in key expression: " + name + "()");
+			}
+		}
+
+		private static int constantInt(KeyExpr expr) {
+			try {
+				return ((Double)expr.eval(null)).intValue();
+			} catch (IOException | RuntimeException e) {
+				throw new IllegalArgumentException("Expect a constant number in key expression.");
+			}
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool: keeps physical JDBC connections open between
+ * connect()/disconnect() calls so scripts don't pay a handshake per unit
+ * of work. There is one pool per provider/server/database/user key and
+ * credentials, so a wrong password never borrows someone else's connection.
+ */
+public class ConnectionPool {
+	private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+	private static final int VALIDATION_TIMEOUT = 5; // seconds
+	private static final long EVICTION_PERIOD = 30_000; // ms
+	private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "foxdream-pool-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		evictor.scheduleWithFixedDelay(() -> {
+			for (ConnectionPool pool : pools.values()) {
+				pool.evictIdle();
+			}
+		}, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Idle: a connection waiting in the pool and when it was returned.
+	 */
+	private static class Idle {
+		final Connection connection;
+		final long since;
+
+		Idle(Connection connection, long since) {
+			this.connection = connection;
+			this.since = since;
+		}
+	}
+
+	final String key;
+	private final String url;
+	private final Properties info; // user, password and driver settings.
+	private volatile int minSize;
+	private volatile int maxSize;
+	private volatile long idleTimeout; // ms
+	private volatile long borrowTimeout; // ms
+
+	private final Deque<Idle> idle = new ArrayDeque<>();
+	private int total = 0; // idle + borrowed + being opened
+
+	// metrics
+	private long created = 0;
+	private long destroyed = 0;
+	private long borrowed = 0;
+	private long returned = 0;
+	private long reused = 0;
+	private long validationFailures = 0;
+	private long waits = 0;
+
+	private ConnectionPool(String key, String url, Properties info) {
+		this.key = key;
+		this.url = url;
+		this.info = info;
+	}
+
+	/**
+	 * Returns the pool for `key`, creating it on first use. The URL and the
+	 * connection properties (password included) are part of the pool
+	 * identity, hashed. Size settings are refreshed on every call so the
+	 * latest connect() wins.
+	 */
+	public static ConnectionPool get(String key, String url, Properties info,
+			int minSize, int maxSize, long idleTimeout, long borrowTimeout) {
+		ConnectionPool pool = pools.computeIfAbsent(key + "|" + fingerprint(url, info), k -> new ConnectionPool(key, url, info));
+		pool.configure(minSize, maxSize, idleTimeout, borrowTimeout);
+		return pool;
+	}
+
+	// SHA-256 of the URL and the sorted properties, so secrets are not kept in the key.
+	private static String fingerprint(String url, Properties info) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(url.getBytes(StandardCharsets.UTF_8));
+			for (String name : new TreeSet<>(info.stringPropertyNames())) {
+				digest.update((byte)0);
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte)0);
+				digest.update(info.getProperty(name).getBytes(StandardCharsets.UTF_8));
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-256.
+		}
+	}
+
+	private void configure(int minSize, int maxSize, long idleTimeout, long borrowTimeout) {
+		this.maxSize = Math.max(1, maxSize);
+		this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+		this.idleTimeout = idleTimeout;
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	/**
+	 * Hands out a validated connection, opening a new one when the pool is
+	 * empty and below its maximum size, or waiting for a returned one.
+	 */
+	public Connection borrow() throws SQLException {
+		long deadline = System.currentTimeMillis() + borrowTimeout;
+		for (;;) {
+			Idle entry = null;
+			synchronized (this) {
+				while (idle.isEmpty() && total >= maxSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new SQLException(String.format("Connection pool exhausted (max size: %s).", maxSize));
+					}
+					waits++;
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a pooled connection.");
+					}
+				}
+				entry = idle.pollFirst();
+				if (entry == null) {
+					total++; // reserve the slot, open outside the lock.
+				}
+			}
+
+			if (entry == null) {
+				Connection connection = open();
+				synchronized (this) {
+					borrowed++;
+				}
+				fill();
+				return connection;
+			}
+			if (validate(entry.connection)) {
+				synchronized (this) {
+					borrowed++;
+					reused++;
+				}
+				return entry.connection;
+			}
+			synchronized (this) {
+				validationFailures++;
+			}
+			destroy(entry.connection);
+		}
+	}
+
+	/**
+	 * Gives a connection back. Pending work is rolled back so the next
+	 * borrower gets a clean autocommit connection; broken ones are closed.
+	 */
+	public void release(Connection connection) {
+		boolean reusable;
+		try {
+			reusable = !connection.isClosed();
+			if (reusable && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			reusable = false;
+		}
+		if (!reusable) {
+			destroy(connection);
+			return;
+		}
+		synchronized (this) {
+			returned++;
+			idle.addFirst(new Idle(connection, System.currentTimeMillis()));
+			notifyAll();
+		}
+	}
+
+	// Closes connections idle for longer than idleTimeout, keeping minSize alive.
+	void evictIdle() {
+		long now = System.currentTimeMillis();
+		Deque<Connection> expired = new ArrayDeque<>();
+		synchronized (this) {
+			// oldest entries are at the end of the deque.
+			Iterator<Idle> it = idle.descendingIterator();
+			while (it.hasNext() && total - expired.size() > minSize) {
+				Idle entry = it.next();
+				if (now - entry.since < idleTimeout) break;
+				it.remove();
+				expired.add(entry.connection);
+			}
+		}
+		for (Connection connection : expired) {
+			destroy(connection);
+		}
+	}
+
+	// Opens connections until the pool holds minSize of them.
+	private void fill() {
+		for (;;) {
+			synchronized (this) {
+				if (total >= minSize) return;
+				total++;
+			}
+			try {
+				Connection connection = open();
+				synchronized (this) {
+					idle.addLast(new Idle(connection, System.currentTimeMillis()));
+					notifyAll();
+				}
+			} catch (SQLException e) {
+				return; // the next borrow() reports the error.
+			}
+		}
+	}
+
+	// Caller must have reserved the slot (total++).
+	private Connection open() throws SQLException {
+		try {
+			Connection connection = DriverManager.getConnection(url, info);
+			synchronized (this) {
+				created++;
+			}
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			synchronized (this) {
+				total--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private boolean validate(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void destroy(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// already broken, nothing else to do.
+		}
+		synchronized (this) {
+			total--;
+			destroyed++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Pool metrics as a script object.
+	 */
+	public synchronized Environment stats() {
+		Environment stats = new Environment();
+		stats.define("size", (double)total, VarType.CONSTANT);
+		stats.define("idle", (double)idle.size(), VarType.CONSTANT);
+		stats.define("active", (double)(total - idle.size()), VarType.CONSTANT);
+		stats.define("minsize", (double)minSize, VarType.CONSTANT);
+		stats.define("maxsize", (double)maxSize, VarType.CONSTANT);
+		stats.define("created", (double)created, VarType.CONSTANT);
+		stats.define("destroyed", (double)destroyed, VarType.CONSTANT);
+		stats.define("borrowed", (double)borrowed, VarType.CONSTANT);
+		stats.define("returned", (double)returned, VarType.CONSTANT);
+		stats.define("reused", (double)reused, VarType.CONSTANT);
+		stats.define("validationfailures", (double)validationFailures, VarType.CONSTANT);
+		stats.define("waits", (double)waits, VarType.CONSTANT);
+		return stats;
+	}
+}
@@ -0,0 +1,612 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Csv: streams CSV files into local cursors or arrays (importcsv) and
+ * cursors or arrays into CSV files (exportcsv), like VFP's APPEND FROM /
+ * COPY TO ... TYPE CSV.
+ *
+ * The reader splits rows straight in the bytes of a channel buffer and
+ * keeps only the bounds of each field, so no String is made for a field
+ * unless it becomes a character value. Numbers are parsed from the bytes.
+ *
+ * Column types come from `types` (one letter per column: N number, C
+ * character, L logical) or are inferred from the first rows: numbers,
+ * true/false, otherwise character. Empty fields are null.
+ *
+ * With `parallel`, large files are cut into chunks at line ends and
+ * parsed by one thread per processor; this needs quoted fields without
+ * line breaks.
+ */
+public class Csv {
+	private static final int BUFFER = 1 << 20;
+	private static final int SAMPLE = 1000; // rows read to infer the column types.
+	private static final long PARALLEL_MIN = 16L << 20; // smaller files are read by one thread.
+	private static final double[] POWERS = new double[19];
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Options: the named arguments of importcsv()/exportcsv().
+	 */
+	static class Options {
+		boolean header = true;
+		byte delimiter = ',';
+		String types = "";
+		boolean parallel = false;
+		Charset charset = StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Rows: where imported rows go, a LocalCursor.Builder or an array.
+	 */
+	interface Rows {
+		void add(Object[] values);
+	}
+
+	/**************************************************************************
+	 * Import
+	 **************************************************************************/
+
+	/**
+	 * Reads `file` into a local cursor.
+	 */
+	static LocalCursor read(File file, Options options) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			Reader first = new Reader(channel, 0, size, options);
+			String[] names = first.header();
+			int[] kinds = first.inferKinds(names.length);
+			RuntimeCursor.Columns columns = new RuntimeCursor.Columns(names, kinds);
+			LocalCursor.Builder builder = new LocalCursor.Builder(columns);
+
+			if (!options.parallel || size < PARALLEL_MIN) {
+				first.drain(builder::addRow, kinds);
+				return builder.build();
+			}
+
+			// the sampled rows come first, the remainder of the file is cut into chunks.
+			first.drainSample(builder::addRow, kinds);
+			long from = first.offset();
+			int threads = Runtime.getRuntime().availableProcessors();
+			long step = Math.max(BUFFER, (size - from) / threads);
+			List<long[]> chunks = new ArrayList<>();
+			while (from < size) {
+				long to = Math.min(size, lineEnd(channel, from + step));
+				chunks.add(new long[] {from, to});
+				from = to;
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks.size()));
+			try {
+				List<Future<LocalCursor.Builder>> parts = new ArrayList<>();
+				for (long[] chunk : chunks) {
+					parts.add(pool.submit(() -> {
+						LocalCursor.Builder part = new LocalCursor.Builder(columns);
+						new Reader(channel, chunk[0], chunk[1], options).drain(part::addRow, kinds);
+						return part;
+					}));
+				}
+				for (Future<LocalCursor.Builder> part : parts) {
+					builder.addAll(part.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("CSV import interrupted.");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException)e.getCause();
+				throw new IOException(e.getCause().getMessage());
+			} finally {
+				pool.shutdownNow();
+			}
+			return builder.build();
+		}
+	}
+
+	/**
+	 * Reads `file` into `rows`, one array of values per row.
+	 */
+	static void read(File file, Options options, Rows rows) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Reader reader = new Reader(channel, 0, channel.size(), options);
+			String[] names = reader.header();
+			reader.drain(rows, reader.inferKinds(names.length));
+		}
+	}
+
+	// offset just past the first line end at or after `at`.
+	private static long lineEnd(FileChannel channel, long at) throws IOException {
+		long size = channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (at < size) {
+			buffer.clear();
+			int n = channel.read(buffer, at);
+			if (n <= 0)
+				break;
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(i) == '\n')
+					return at + i + 1;
+			}
+			at += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Reader: splits the rows of a byte range of the file.
+	 */
+	private static class Reader {
+		private final FileChannel channel;
+		private final long end;
+		private final Options options;
+		private long position; // file offset of buf[limit].
+		private byte[] buf = new byte[BUFFER];
+		private int pos = 0;
+		private int limit = 0;
+		private boolean last = false; // the buffer holds the end of the range.
+		private int rowNumber = 0;
+
+		// bounds of the fields of the current row; quoted: 0 no, 1 yes, 2 with doubled quotes.
+		private int fields;
+		private int[] starts = new int[64];
+		private int[] ends = new int[64];
+		private byte[] quoted = new byte[64];
+
+		private final List<String[]> sample = new ArrayList<>();
+		private int sampled = 0; // sample rows already drained.
+
+		Reader(FileChannel channel, long start, long end, Options options) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+			this.options = options;
+		}
+
+		// file offset of the next unread row.
+		long offset() {
+			return position - (limit - pos);
+		}
+
+		// column names from the first row, or f1..fn without a header.
+		String[] header() throws IOException {
+			if (!options.header) {
+				if (!nextRow())
+					return new String[0];
+				sample.add(strings());
+				String[] names = new String[fields];
+				for (int i = 0; i < fields; i++) {
+					names[i] = "f" + (i + 1);
+				}
+				return names;
+			}
+			if (!nextRow())
+				return new String[0];
+			String[] names = strings();
+			for (int i = 0; i < names.length; i++) {
+				String name = names[i].trim().toLowerCase().replaceAll("\\W+", "_");
+				names[i] = name.isEmpty() ? "f" + (i + 1) : name;
+			}
+			return names;
+		}
+
+		// reads up to SAMPLE rows and picks the type of every column.
+		int[] inferKinds(int width) throws IOException {
+			while (sample.size() < SAMPLE && nextRow()) {
+				sample.add(strings());
+			}
+			int[] kinds = new int[width];
+			for (int c = 0; c < width; c++) {
+				if (c < options.types.length()) {
+					kinds[c] = kindOf(options.types.charAt(c));
+					continue;
+				}
+				boolean numbers = true;
+				boolean booleans = true;
+				boolean any = false;
+				for (String[] row : sample) {
+					String value = c < row.length ? row[c] : null;
+					if (value == null || value.isEmpty())
+						continue;
+					any = true;
+					byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+					numbers = numbers && !Double.isNaN(number(bytes, 0, bytes.length));
+					booleans = booleans && (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"));
+				}
+				kinds[c] = !any ? RuntimeCursor.STRING : numbers ? RuntimeCursor.NUMBER
+						: booleans ? RuntimeCursor.BOOLEAN : RuntimeCursor.STRING;
+			}
+			return kinds;
+		}
+
+		private static int kindOf(char type) {
+			switch (Character.toUpperCase(type)) {
+			case 'N': return RuntimeCursor.NUMBER;
+			case 'L': return RuntimeCursor.BOOLEAN;
+			case 'C': return RuntimeCursor.STRING;
+			default:
+				throw new IllegalArgumentException(String.format("Invalid column type `%s`, expecting N, C or L.", type));
+			}
+		}
+
+		void drainSample(Rows rows, int[] kinds) throws IOException {
+			Object[] values = new Object[kinds.length];
+			for (; sampled < sample.size(); sampled++) {
+				String[] row = sample.get(sampled);
+				for (int c = 0; c < kinds.length; c++) {
+					String text = c < row.length ? row[c] : null;
+					values[c] = text == null || text.isEmpty() ? null : decode(text, kinds[c], c);
+				}
+				rows.add(values);
+			}
+			sample.clear();
+		}
+
+		// the sampled rows, then the rest of the range.
+		void drain(Rows rows, int[] kinds) throws IOException {
+			drainSample(rows, kinds);
+			Object[] values = new Object[kinds.length];
+			while (nextRow()) {
+				for (int c = 0; c < kinds.length; c++) {
+					values[c] = c < fields ? value(c, kinds[c]) : null;
+				}
+				rows.add(values);
+			}
+		}
+
+		private Object value(int field, int kind) throws IOException {
+			int start = starts[field];
+			int end = ends[field];
+			if (start == end)
+				return null;
+			switch (kind) {
+			case RuntimeCursor.NUMBER:
+				if (quoted[field] == 0) {
+					double number = number(buf, start, end);
+					if (Double.isNaN(number))
+						throw new IOException(String.format("Row %s, column %s: `%s` is not a number.", rowNumber, field + 1, text(field)));
+					return number;
+				}
+				return decode(text(field), kind, field);
+			case RuntimeCursor.STRING:
+				return text(field);
+			default:
+				return decode(text(field), kind, field);
+			}
+		}
+
+		private Object decode(String text, int kind, int field) throws IOException {
+			switch (kind) {
+			case RuntimeCursor.NUMBER:
+				byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+				double number = number(bytes, 0, bytes.length);
+				if (Double.isNaN(number))
+					throw new IOException(String.format("Row %s, column %s: `%s` is not a number.", rowNumber, field + 1, text));
+				return number;
+			case RuntimeCursor.BOOLEAN:
+				switch (text.trim().toLowerCase()) {
+				case "true": case "t": case ".t.": case "y": case "1": return true;
+				case "false": case "f": case ".f.": case "n": case "0": return false;
+				default:
+					throw new IOException(String.format("Row %s, column %s: `%s` is not a logical value.", rowNumber, field + 1, text));
+				}
+			default:
+				return text;
+			}
+		}
+
+		private String text(int field) {
+			String text = new String(buf, starts[field], ends[field] - starts[field], options.charset);
+			return quoted[field] == 2 ? text.replace("\"\"", "\"") : text;
+		}
+
+		private String[] strings() {
+			String[] values = new String[fields];
+			for (int i = 0; i < fields; i++) {
+				values[i] = text(i);
+			}
+			return values;
+		}
+
+		// splits the next non-empty row, false at the end of the range.
+		private boolean nextRow() throws IOException {
+			while (true) {
+				if (pos >= limit && !fill())
+					return false;
+				int next = split(pos);
+				if (next < 0) {
+					fill(); // the row goes on past the buffer.
+					continue;
+				}
+				pos = next;
+				rowNumber++;
+				if (fields > 1 || starts[0] != ends[0] || quoted[0] != 0)
+					return true;
+			}
+		}
+
+		/**
+		 * Finds the bounds of the fields of the row starting at `i`. Returns
+		 * the offset after the row, or -1 when the buffer ends first.
+		 */
+		private int split(int i) {
+			byte delimiter = options.delimiter;
+			fields = 0;
+			while (true) {
+				if (fields == starts.length) {
+					starts = Arrays.copyOf(starts, fields * 2);
+					ends = Arrays.copyOf(ends, fields * 2);
+					quoted = Arrays.copyOf(quoted, fields * 2);
+				}
+				if (i < limit && buf[i] == '"') {
+					int start = ++i;
+					byte kind = 1;
+					while (true) {
+						if (i >= limit) {
+							if (!last)
+								return -1;
+							break; // unterminated quote at the end of the file.
+						}
+						if (buf[i] == '"') {
+							if (i + 1 >= limit && !last)
+								return -1;
+							if (i + 1 < limit && buf[i + 1] == '"') {
+								kind = 2;
+								i += 2;
+								continue;
+							}
+							break;
+						}
+						i++;
+					}
+					starts[fields] = start;
+					ends[fields] = Math.min(i, limit);
+					quoted[fields] = kind;
+					i++;
+					while (i < limit && buf[i] != delimiter && buf[i] != '\n' && buf[i] != '\r') i++;
+				} else {
+					int start = i;
+					while (i < limit && buf[i] != delimiter && buf[i] != '\n' && buf[i] != '\r') i++;
+					starts[fields] = start;
+					ends[fields] = i;
+					quoted[fields] = 0;
+				}
+				fields++;
+				if (i >= limit)
+					return last ? limit : -1;
+				if (buf[i] == delimiter) {
+					i++;
+					continue;
+				}
+				if (buf[i] == '\r') {
+					if (i + 1 >= limit && !last)
+						return -1;
+					i++;
+					if (i < limit && buf[i] == '\n')
+						i++;
+				} else {
+					i++;
+				}
+				return i;
+			}
+		}
+
+		// keeps the unread bytes and reads more; false when nothing is left.
+		private boolean fill() throws IOException {
+			if (last)
+				return false;
+			int kept = limit - pos;
+			if (kept == buf.length)
+				buf = Arrays.copyOf(buf, buf.length * 2); // a row longer than the buffer.
+			else
+				System.arraycopy(buf, pos, buf, 0, kept);
+			pos = 0;
+			limit = kept;
+			ByteBuffer target = ByteBuffer.wrap(buf, limit, (int)Math.min(buf.length - limit, end - position));
+			while (target.hasRemaining()) {
+				int n = channel.read(target, position);
+				if (n < 0)
+					break;
+				position += n;
+			}
+			int read = target.position() - limit;
+			limit = target.position();
+			last = position >= end;
+			return read > 0 || kept > 0;
+		}
+	}
+
+	/**
+	 * Parses a decimal number from bytes, NaN when they are not one.
+	 * Plain digits with an optional sign and point are parsed in place.
+	 */
+	static double number(byte[] b, int start, int end) {
+		while (start < end && b[start] == ' ') start++;
+		while (end > start && b[end - 1] == ' ') end--;
+		if (start == end)
+			return Double.NaN;
+		int i = start;
+		boolean negative = b[i] == '-';
+		if (negative || b[i] == '+')
+			i++;
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < end; i++) {
+			byte c = b[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (decimals >= 0)
+					decimals++;
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == end && digits > 0 && digits < 16) {
+			double value = decimals > 0 ? mantissa / POWERS[decimals] : mantissa;
+			return negative ? -value : value;
+		}
+		// exponents, long mantissas, or not a number at all.
+		for (int c = start; c < end; c++) {
+			byte ch = b[c];
+			if ((ch < '0' || ch > '9') && ch != '.' && ch != '-' && ch != '+' && ch != 'e' && ch != 'E')
+				return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(new String(b, start, end - start, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**************************************************************************
+	 * Export
+	 **************************************************************************/
+
+	/**
+	 * Writer: encodes rows into a channel buffer.
+	 */
+	private static class Writer implements AutoCloseable {
+		private final FileChannel channel;
+		private final CharsetEncoder encoder;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+		private final StringBuilder line = new StringBuilder(256);
+		private final char delimiter;
+
+		Writer(File file, Options options) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.encoder = options.charset.newEncoder();
+			this.delimiter = (char)options.delimiter;
+		}
+
+		void field(int i, Object value) {
+			if (i > 0)
+				line.append(delimiter);
+			if (value == null)
+				return;
+			if (value instanceof Double || value instanceof Boolean) {
+				Interpreter.stringify(line, value);
+				return;
+			}
+			String text = Interpreter.stringify(value);
+			if (text.indexOf(delimiter) < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+				line.append(text);
+				return;
+			}
+			line.append('"');
+			for (int c = 0; c < text.length(); c++) {
+				char ch = text.charAt(c);
+				if (ch == '"')
+					line.append('"');
+				line.append(ch);
+			}
+			line.append('"');
+		}
+
+		void endRow() throws IOException {
+			line.append("\r\n");
+			CharBuffer chars = CharBuffer.wrap(line);
+			while (true) {
+				CoderResult result = encoder.encode(chars, buffer, false);
+				if (result.isOverflow()) {
+					flush();
+				} else if (result.isError()) {
+					result.throwException();
+				} else {
+					break;
+				}
+			}
+			line.setLength(0);
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the rows of `cursor` from the current one to the end.
+	 * Returns the number of rows written.
+	 */
+	static int write(RuntimeCursor cursor, File file, Options options) throws IOException, SQLException {
+		int rows = 0;
+		try (Writer writer = new Writer(file, options)) {
+			String[] names = cursor.columns.names;
+			if (options.header) {
+				for (int i = 0; i < names.length; i++) {
+					writer.field(i, names[i]);
+				}
+				writer.endRow();
+			}
+			while (!cursor.eof) {
+				cursor.readAhead(Interpreter.SCAN_BLOCK_SIZE);
+				for (int i = 0; i < names.length; i++) {
+					writer.field(i, cursor.field(i + 1));
+				}
+				writer.endRow();
+				cursor.moveNext();
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Writes an array, one row per element: arrays become fields, other
+	 * values a single field. Arrays have no header.
+	 */
+	static int write(RuntimeArray array, File file, Options options) throws IOException {
+		try (Writer writer = new Writer(file, options)) {
+			for (Object element : array.elements) {
+				if (element instanceof RuntimeArray) {
+					List<Object> fields = ((RuntimeArray)element).elements;
+					for (int i = 0; i < fields.size(); i++) {
+						writer.field(i, fields.get(i));
+					}
+				} else {
+					writer.field(0, element);
+				}
+				writer.endRow();
+			}
+		}
+		return array.elements.size();
+	}
+}
@@ -0,0 +1,143 @@
+package core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * CursorIndex: a sorted-array index over a LocalCursor (INDEX ON ... TAG).
+ * `rows` holds the record numbers ordered by key, so SEEK and range scans
+ * are binary searches over `keys`.
+ *
+ * Like VFP with SET EXACT OFF, a character search matches every key that
+ * starts with it.
+ */
+public class CursorIndex {
+	final String tag;
+	final String expression; // key expression as written by Rushmore.canonical, null if unknown.
+	final Object[] keys;
+	final int[] rows;
+	private int[] positions; // record number -> position in `rows`, built on demand.
+
+	public CursorIndex(String tag, String expression, Object[] rowKeys) {
+		this.tag = tag;
+		this.expression = expression;
+
+		// stable sort so equal keys keep record order.
+		Integer[] order = new Integer[rowKeys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> compare(rowKeys[a], rowKeys[b]));
+
+		this.keys = new Object[order.length];
+		this.rows = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			rows[i] = order[i];
+			keys[i] = rowKeys[order[i]];
+		}
+	}
+
+	int size() {
+		return rows.length;
+	}
+
+	// position of `row` in index order.
+	int positionOf(int row) {
+		if (positions == null) {
+			positions = new int[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				positions[rows[i]] = i;
+			}
+		}
+		return positions[row];
+	}
+
+	// first position whose key is >= `key`.
+	int lowerBound(Object key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(keys[mid], key) < 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	// first position past every key <= `key` or starting with it.
+	int upperBound(Object key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(keys[mid], key) <= 0 || startsWith(keys[mid], key)) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	// first position whose key is > `key`, with no prefix matching.
+	int exactUpperBound(Object key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(keys[mid], key) <= 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Rushmore: the records whose key compares to `key` with `op`, as a
+	 * bitmap. Null keys never match. Throws IllegalArgumentException when
+	 * `key` is not of the indexed type.
+	 */
+	BitSet scan(Category op, Object key) {
+		int nulls = exactUpperBound(null); // null keys sort first.
+		int from;
+		int to;
+		switch (op) {
+		case EQUAL: from = lowerBound(key); to = exactUpperBound(key); break;
+		case LESS: from = nulls; to = lowerBound(key); break;
+		case LESS_EQ: from = nulls; to = exactUpperBound(key); break;
+		case GREATER: from = exactUpperBound(key); to = keys.length; break;
+		case GREATER_EQ: from = lowerBound(key); to = keys.length; break;
+		default: return null;
+		}
+		BitSet rows = new BitSet(keys.length);
+		for (int pos = Math.max(from, nulls); pos < to; pos++) {
+			rows.set(this.rows[pos]);
+		}
+		return rows;
+	}
+
+	// position of the first key matching `key`, or -1.
+	int seek(Object key) {
+		int pos = lowerBound(key);
+		if (pos < keys.length && (compare(keys[pos], key) == 0 || startsWith(keys[pos], key)))
+			return pos;
+		return -1;
+	}
+
+	private static boolean startsWith(Object indexKey, Object key) {
+		return indexKey instanceof String && key instanceof String && ((String)indexKey).startsWith((String)key);
+	}
+
+	/**
+	 * Orders keys of the same type; null sorts first.
+	 */
+	static int compare(Object a, Object b) {
+		if (a == b) return 0;
+		if (a == null) return -1;
+		if (b == null) return 1;
+		if (a instanceof Double && b instanceof Double)
+			return Double.compare((Double)a, (Double)b);
+		if (a instanceof String && b instanceof String)
+			return ((String)a).compareTo((String)b);
+		if (a instanceof Boolean && b instanceof Boolean)
+			return Boolean.compare((Boolean)a, (Boolean)b);
+		throw new IllegalArgumentException(String.format("Incompatible index key types: %s and %s.",
+				a.getClass().getSimpleName(), b.getClass().getSimpleName()));
+	}
+}
@@ -0,0 +1,246 @@
+package core;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DatabaseProvider: how connect() reaches one kind of database. A provider
+ * builds the JDBC URL from the connection properties and adds the driver
+ * settings that make batches and large results fast.
+ *
+ * connection.provider takes one of the _MYSQL, _MSSQL, _H2 and _SQLITE
+ * constants, a provider name ("mysql", "mssql", "h2", "sqlite"), or a full
+ * "jdbc:..." URL used as is. Other databases plug in as subclasses listed
+ * in META-INF/services/core.DatabaseProvider on the class path.
+ */
+public abstract class DatabaseProvider {
+	private static final Map<String, DatabaseProvider> providers = new ConcurrentHashMap<>();
+
+	static {
+		register(new MySql());
+		register(new SqlServer());
+		register(new H2());
+		register(new Sqlite());
+	}
+
+	/**
+	 * The name scripts use for the provider, in lower case.
+	 */
+	public abstract String name();
+
+	/**
+	 * The number of its global constant, 0 when it has none.
+	 */
+	public int id() {
+		return 0;
+	}
+
+	/**
+	 * The JDBC URL for the server, port and database properties; any of them may be empty.
+	 */
+	public abstract String url(String server, String port, String database);
+
+	/**
+	 * Adds driver settings to the connection properties, which already
+	 * hold `user` and `password`.
+	 */
+	public void configure(Properties info) {
+	}
+
+	/**
+	 * Rows per round-trip when the script leaves fetchsize at 0; 0 keeps the driver default.
+	 */
+	public int fetchSize() {
+		return 0;
+	}
+
+	public static void register(DatabaseProvider provider) {
+		providers.put(provider.name().toLowerCase(Locale.ROOT), provider);
+	}
+
+	/**
+	 * The provider for a connection.provider value. An empty value is MySQL,
+	 * the only database connect() knew before providers.
+	 */
+	static DatabaseProvider of(Object provider) {
+		if (provider instanceof Number) {
+			int id = ((Number)provider).intValue();
+			for (DatabaseProvider candidate : providers.values()) {
+				if (candidate.id() == id)
+					return candidate;
+			}
+			throw new IllegalArgumentException("Unknown provider number: " + id);
+		}
+		String name = provider == null ? "" : provider.toString().trim();
+		if (name.isEmpty())
+			return providers.get("mysql");
+		if (name.regionMatches(true, 0, "jdbc:", 0, 5))
+			return new Url(name);
+		DatabaseProvider found = providers.get(name.toLowerCase(Locale.ROOT));
+		if (found == null) {
+			for (DatabaseProvider loaded : ServiceLoader.load(DatabaseProvider.class)) {
+				register(loaded);
+			}
+			found = providers.get(name.toLowerCase(Locale.ROOT));
+		}
+		if (found == null)
+			throw new IllegalArgumentException("Unknown provider: " + name);
+		return found;
+	}
+
+	private static String hostPort(String server, String port, String defaultServer) {
+		String host = server.isEmpty() ? defaultServer : server;
+		return port.isEmpty() ? host : host + ":" + port;
+	}
+
+	/**
+	 * MySQL (Connector/J).
+	 *
+	 * Bulk load: rewriteBatchedStatements turns the rows of a batch() into
+	 * multi-row INSERTs, so one round-trip carries hundreds of rows instead
+	 * of one. Streaming: useCursorFetch with a positive fetch size reads
+	 * large results through a server-side cursor, `fetchSize()` rows at a
+	 * time, instead of buffering the whole result in memory. Server-side
+	 * prepares let the statements kept by StatementCache skip parsing.
+	 */
+	static class MySql extends DatabaseProvider {
+		@Override
+		public String name() {
+			return "mysql";
+		}
+
+		@Override
+		public int id() {
+			return 1;
+		}
+
+		@Override
+		public String url(String server, String port, String database) {
+			return String.format("jdbc:mysql://%s/%s", hostPort(server, port, "localhost"), database);
+		}
+
+		@Override
+		public void configure(Properties info) {
+			info.putIfAbsent("rewriteBatchedStatements", "true");
+			info.putIfAbsent("useCursorFetch", "true");
+			info.putIfAbsent("useServerPrepStmts", "true");
+			info.putIfAbsent("cachePrepStmts", "true");
+		}
+
+		@Override
+		public int fetchSize() {
+			return 1000;
+		}
+	}
+
+	/**
+	 * SQL Server (Microsoft JDBC driver).
+	 *
+	 * Bulk load: useBulkCopyForBatchInsert sends the rows of a batch() of
+	 * INSERT ... VALUES (?, ...) through the bulk copy protocol. Streaming:
+	 * adaptive response buffering reads rows as the script asks for them.
+	 * Strings are sent as varchar instead of nvarchar, so comparisons with
+	 * varchar columns keep using their indexes.
+	 */
+	static class SqlServer extends DatabaseProvider {
+		@Override
+		public String name() {
+			return "mssql";
+		}
+
+		@Override
+		public int id() {
+			return 2;
+		}
+
+		@Override
+		public String url(String server, String port, String database) {
+			String url = "jdbc:sqlserver://" + hostPort(server, port, "localhost");
+			return database.isEmpty() ? url : url + ";databaseName=" + database;
+		}
+
+		@Override
+		public void configure(Properties info) {
+			info.putIfAbsent("useBulkCopyForBatchInsert", "true");
+			info.putIfAbsent("responseBuffering", "adaptive");
+			info.putIfAbsent("sendStringParametersAsUnicode", "false");
+		}
+	}
+
+	/**
+	 * H2, embedded or in memory, for local work and tests. A server makes
+	 * it a TCP connection; without one `database` is a file path or
+	 * "mem:name". Bulk load is batch() with transaction: .t.; results are
+	 * read lazily by the engine.
+	 */
+	static class H2 extends DatabaseProvider {
+		@Override
+		public String name() {
+			return "h2";
+		}
+
+		@Override
+		public int id() {
+			return 3;
+		}
+
+		@Override
+		public String url(String server, String port, String database) {
+			if (server.isEmpty())
+				return "jdbc:h2:" + database;
+			return String.format("jdbc:h2:tcp://%s/%s", hostPort(server, port, "localhost"), database);
+		}
+	}
+
+	/**
+	 * SQLite (xerial driver), a single file database. Bulk load is batch()
+	 * with transaction: .t., since every commit syncs the file. WAL
+	 * journaling lets readers work while a script writes, and with WAL a
+	 * NORMAL sync is still safe from corruption. Rows are always read one
+	 * step at a time.
+	 */
+	static class Sqlite extends DatabaseProvider {
+		@Override
+		public String name() {
+			return "sqlite";
+		}
+
+		@Override
+		public int id() {
+			return 4;
+		}
+
+		@Override
+		public String url(String server, String port, String database) {
+			return "jdbc:sqlite:" + database;
+		}
+
+		@Override
+		public void configure(Properties info) {
+			info.putIfAbsent("journal_mode", "WAL");
+			info.putIfAbsent("synchronous", "NORMAL");
+		}
+	}
+
+	// a provider value that is already a JDBC URL.
+	private static class Url extends DatabaseProvider {
+		private final String url;
+
+		Url(String url) {
+			this.url = url;
+		}
+
+		@Override
+		public String name() {
+			return url;
+		}
+
+		@Override
+		public String url(String server, String port, String database) {
+			return url;
+		}
+	}
+}
@@ -0,0 +1,900 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * DbfCursor: a Visual FoxPro table (.dbf plus its .fpt memo file) opened
+ * with use("file.dbf").
+ *
+ * The records are memory-mapped in chunks of whole records, so tables
+ * larger than 2GB work too. A field is decoded from the mapped buffer only
+ * when it is read. Moving through the table does not allocate anything.
+ *
+ * local t = use("customer.dbf") // or use("customer.dbf", readonly: .t.)
+ * t.go(10)
+ * t.replace("name", "ACME")
+ * t.append()
+ *
+ * When the table has a structural .cdx, its tags drive SET ORDER TO and
+ * SEEK, and every write keeps them up to date.
+ */
+public class DbfCursor extends RuntimeCursor {
+	static final int CHUNK_SIZE = 1 << 30; // bytes mapped at once, rounded down to whole records.
+
+	final File file;
+	final boolean readonly;
+	final Field[] fields;
+	final Charset charset;
+	private final FileChannel channel;
+	private final int headerLength;
+	private final int recordLength;
+	private final int recordsPerChunk;
+	private final int nullFlagsOffset; // -1 when the table has no _NullFlags field.
+	private final List<MappedByteBuffer> chunks = new ArrayList<>();
+	private final Memo memo;
+	private Cdx cdx; // structural index, null when the table has none.
+	int count;
+	int row = 0; // 0-based current record.
+	private boolean dirty = false;
+	private Cdx.Tag order; // controlling tag, null for record order.
+	private Cdx.Position position; // entry of `row` in `order`, null until needed.
+	boolean found;
+
+	/**
+	 * Field: one column of the record layout.
+	 */
+	static class Field {
+		final String name;
+		final char type;
+		final int offset; // from the start of the record, after the deletion flag.
+		final int length;
+		final int decimals;
+		int nullBit = -1; // bit in _NullFlags set when the value is .null.
+		int varBit = -1; // bit in _NullFlags set when a varchar is shorter than its length.
+
+		Field(String name, char type, int offset, int length, int decimals) {
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+			this.length = length;
+			this.decimals = decimals;
+		}
+	}
+
+	private DbfCursor(File file, boolean readonly, FileChannel channel, Field[] fields, Charset charset,
+			int headerLength, int recordLength, int count, int nullFlagsOffset, Memo memo) {
+		super(new Columns(names(fields), kinds(fields)));
+		this.file = file;
+		this.readonly = readonly;
+		this.channel = channel;
+		this.fields = fields;
+		this.charset = charset;
+		this.headerLength = headerLength;
+		this.recordLength = recordLength;
+		this.recordsPerChunk = Math.max(1, CHUNK_SIZE / recordLength);
+		this.count = count;
+		this.nullFlagsOffset = nullFlagsOffset;
+		this.memo = memo;
+		this.eof = count == 0;
+	}
+
+	/**
+	 * Opens a table and reads its header and field descriptors.
+	 */
+	static DbfCursor open(String path, boolean readonly) throws IOException {
+		File file = new File(path);
+		FileChannel channel = readonly
+				? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+				: FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			int count = header.getInt(4);
+			int headerLength = header.getShort(8) & 0xFFFF;
+			int recordLength = header.getShort(10) & 0xFFFF;
+			Charset charset = charsetOf(header.get(29) & 0xFF);
+
+			ByteBuffer descriptors = ByteBuffer.allocate(headerLength - 32).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, descriptors, 32);
+
+			List<Field> fields = new ArrayList<>();
+			int nullFlagsOffset = -1;
+			int offset = 1;
+			int bit = 0;
+			for (int pos = 0; pos + 32 <= descriptors.limit() && descriptors.get(pos) != 0x0D; pos += 32) {
+				byte[] raw = new byte[11];
+				descriptors.get(pos, raw);
+				int end = 0;
+				while (end < raw.length && raw[end] != 0) end++;
+				String name = new String(raw, 0, end, charset).trim().toLowerCase();
+				char type = (char)descriptors.get(pos + 11);
+				int length = descriptors.get(pos + 16) & 0xFF;
+				int decimals = descriptors.get(pos + 17) & 0xFF;
+				int flags = descriptors.get(pos + 18) & 0xFF;
+				if (type == 'C' && (flags & 0x04) == 0) {
+					length |= decimals << 8; // character fields longer than 255 keep the high byte here.
+					decimals = 0;
+				}
+				if (type == '0') {
+					nullFlagsOffset = offset;
+				} else {
+					Field field = new Field(name, type, offset, length, decimals);
+					if (type == 'V' || type == 'Q') field.varBit = bit++;
+					if ((flags & 0x02) != 0) field.nullBit = bit++;
+					fields.add(field);
+				}
+				offset += length;
+			}
+
+			Memo memo = null;
+			File memoFile = sibling(file, ".fpt");
+			if (memoFile != null)
+				memo = new Memo(memoFile, readonly);
+			DbfCursor table = new DbfCursor(file, readonly, channel, fields.toArray(new Field[0]), charset,
+					headerLength, recordLength, count, nullFlagsOffset, memo);
+			File cdxFile = sibling(file, ".cdx");
+			if (cdxFile != null)
+				table.cdx = Cdx.open(cdxFile, table, readonly);
+			return table;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Object(Table: %s, %s records)", file.getName(), count);
+	}
+
+	/**********************************************************************
+	 * Reading
+	 **********************************************************************/
+
+	@Override
+	Object getValue(int index) throws SQLException {
+		if (eof)
+			throw new IllegalStateException("No current record, the table is at end of file.");
+		try {
+			return decode(fields[index - 1]);
+		} catch (IOException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	private Object decode(Field field) throws IOException {
+		ByteBuffer buffer = chunk(row);
+		int base = position(row);
+		int at = base + field.offset;
+
+		if (field.nullBit >= 0 && nullFlag(buffer, base, field.nullBit))
+			return null;
+
+		switch (field.type) {
+		case 'C':
+			return text(buffer, at, field.length);
+		case 'V':
+			int length = field.length;
+			if (nullFlag(buffer, base, field.varBit))
+				length = buffer.get(at + field.length - 1) & 0xFF;
+			return new String(bytes(buffer, at, length), charset);
+		case 'N': case 'F':
+			return number(buffer, at, field.length);
+		case 'I':
+			return (double)buffer.getInt(at);
+		case 'B':
+			return buffer.getDouble(at);
+		case 'Y':
+			return buffer.getLong(at) / 10000.0;
+		case 'L':
+			switch (buffer.get(at)) {
+			case 'T': case 't': case 'Y': case 'y': return true;
+			case '?': return null;
+			default: return false;
+			}
+		case 'D':
+			String date = text(buffer, at, 8);
+			if (date.isEmpty())
+				return null;
+			return date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6, 8);
+		case 'T':
+			int day = buffer.getInt(at);
+			int millis = buffer.getInt(at + 4);
+			if (day == 0)
+				return null;
+			LocalTime time = LocalTime.ofNanoOfDay(millis * 1_000_000L);
+			return String.format("%s %02d:%02d:%02d", LocalDate.ofEpochDay(day - JULIAN_EPOCH),
+					time.getHour(), time.getMinute(), time.getSecond());
+		case 'M':
+			if (memo == null)
+				return null;
+			int block = memoBlock(buffer, at, field.length);
+			return block == 0 ? "" : new String(memo.read(block), charset);
+		default:
+			// General, blob and varbinary fields are returned as raw bytes.
+			return bytes(buffer, at, field.length);
+		}
+	}
+
+	// trailing blanks and NULs are padding.
+	private String text(ByteBuffer buffer, int at, int length) {
+		int end = length;
+		while (end > 0) {
+			byte b = buffer.get(at + end - 1);
+			if (b != ' ' && b != 0) break;
+			end--;
+		}
+		return end == 0 ? "" : new String(bytes(buffer, at, end), charset);
+	}
+
+	private static byte[] bytes(ByteBuffer buffer, int at, int length) {
+		byte[] value = new byte[length];
+		buffer.get(at, value);
+		return value;
+	}
+
+	// N and F fields are right-aligned ASCII; parsed in place to skip the String.
+	private static Object number(ByteBuffer buffer, int at, int length) {
+		long digits = 0;
+		int scale = -1;
+		boolean negative = false;
+		boolean any = false;
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(at + i);
+			if (b >= '0' && b <= '9') {
+				digits = digits * 10 + (b - '0');
+				if (scale >= 0) scale++;
+				any = true;
+			} else if (b == '.') {
+				scale = 0;
+			} else if (b == '-') {
+				negative = true;
+			} else if (b == '*') {
+				return null; // numeric overflow marker.
+			}
+		}
+		if (!any)
+			return 0.0;
+		double value = scale > 0 ? digits / Math.pow(10, scale) : digits;
+		return negative ? -value : value;
+	}
+
+	// VFP stores memo pointers as a 4-byte integer, dBase/FoxPro 2 as 10 ASCII digits.
+	private static int memoBlock(ByteBuffer buffer, int at, int length) {
+		if (length == 4)
+			return buffer.getInt(at);
+		Object block = number(buffer, at, length);
+		return block == null ? 0 : ((Double)block).intValue();
+	}
+
+	// field value as index key expressions see it: dates as LocalDate.
+	Object keyValue(Field field) throws IOException {
+		Object value = decode(field);
+		if (field.type == 'D' && value != null)
+			return LocalDate.parse((String)value);
+		return value;
+	}
+
+	private boolean nullFlag(ByteBuffer buffer, int base, int bit) {
+		return (buffer.get(base + nullFlagsOffset + bit / 8) & (1 << (bit % 8))) != 0;
+	}
+
+	private boolean deleted() throws IOException {
+		return chunk(row).get(position(row)) == '*';
+	}
+
+	/**********************************************************************
+	 * Navigation
+	 **********************************************************************/
+
+	@Override
+	boolean advance() throws SQLException {
+		if (order == null)
+			return ++row < count;
+		try {
+			if (position == null)
+				position = order.locate(order.key(this), row + 1);
+			if (position == null || !order.move(position, order.descending))
+				return land(null);
+			return land(position);
+		} catch (IOException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	boolean rewind() throws SQLException {
+		if (order == null) {
+			row = 0;
+			return count > 0;
+		}
+		try {
+			return land(order.first(order.descending));
+		} catch (IOException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	// moves to the record of an index entry, or to end of file.
+	private boolean land(Cdx.Position at) {
+		position = at;
+		row = at == null ? count : at.recno() - 1;
+		return at != null;
+	}
+
+	@Override
+	int recordCount() {
+		return count;
+	}
+
+	@Override
+	int rowIndex() {
+		return row;
+	}
+
+	@Override
+	boolean jumpTo(int row) {
+		if (order != null)
+			return false;
+		this.row = Math.min(row, count);
+		eof = this.row >= count;
+		return true;
+	}
+
+	// filtered and unique tags leave records out, so they cannot answer a condition.
+	@Override
+	String indexTag(String expression) {
+		if (cdx == null)
+			return null;
+		for (Cdx.Tag tag : cdx.tags.values()) {
+			if (tag.key != null && !tag.unique && tag.filter.isEmpty() && expression.equals(Rushmore.canonical(tag.expression)))
+				return tag.name;
+		}
+		return null;
+	}
+
+	@Override
+	BitSet indexScan(String tag, Category op, Object value) {
+		try {
+			return cdx.tag(tag).scan(op, value, count);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	// SET ORDER TO [tag]: no tag goes back to record order.
+	@Override
+	void setOrder(String tag) {
+		if (tag != null && cdx == null)
+			throw new IllegalArgumentException("The table has no structural index (.cdx).");
+		order = tag == null ? null : cdx.tag(tag);
+		position = null;
+	}
+
+	/**
+	 * SEEK key [TAG tag]: walks down the tag's B-tree to the first matching
+	 * entry. A tag also becomes the controlling order. On a miss the table
+	 * is left at end of file and found() returns .f.
+	 */
+	@Override
+	boolean seek(Object key, String tag) {
+		if (tag != null)
+			setOrder(tag);
+		if (order == null)
+			throw new IllegalArgumentException("No index order set, use SET ORDER TO first.");
+		try {
+			byte[] search = order.search(key);
+			Cdx.Position at = order.seek(search);
+			found = at != null && Cdx.compare(at.key(), search, search.length) == 0;
+			land(found ? at : null);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		eof = !found;
+		bof = false;
+		return found;
+	}
+
+	// the records are already mapped, SCAN reads them in place.
+	@Override
+	void readAhead(int size) {
+	}
+
+	@Override
+	void release() throws SQLException {
+		try {
+			flush();
+			chunks.clear();
+			channel.close();
+			if (memo != null)
+				memo.close();
+			if (cdx != null)
+				cdx.close();
+		} catch (IOException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		try {
+			switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+			case "go":
+				checkArgumentsArity(arguments, 1);
+				return go(toInt(arguments[0]));
+			case "skip":
+				return skip(arguments == null || arguments.length == 0 ? 1 : toInt(arguments[0]));
+			case "recno":
+				checkArgumentsArity(arguments, 0);
+				return (double)(row + 1);
+			case "reccount":
+				checkArgumentsArity(arguments, 0);
+				return (double)count;
+			case "deleted":
+				checkArgumentsArity(arguments, 0);
+				checkRecord();
+				return deleted();
+			case "replace":
+				checkArgumentsArity(arguments, 2);
+				checkRecord();
+				replace(toField(arguments[0]), arguments[1].value);
+				return true;
+			case "append":
+				checkArgumentsArity(arguments, 0);
+				append();
+				return (double)count;
+			case "delete":
+				checkArgumentsArity(arguments, 0);
+				checkRecord();
+				mark((byte)'*');
+				return true;
+			case "recall":
+				checkArgumentsArity(arguments, 0);
+				checkRecord();
+				mark((byte)' ');
+				return true;
+			case "flush":
+				checkArgumentsArity(arguments, 0);
+				flush();
+				return true;
+			case "seek":
+				if (arguments == null || arguments.length < 1 || arguments.length > 2)
+					error("Wrong number of parameters/arguments. Expected: 1 or 2.");
+				return seek(arguments[0].value, arguments.length == 2 ? toTag(arguments[1]) : null);
+			case "found":
+				checkArgumentsArity(arguments, 0);
+				return found;
+			case "setorder":
+				setOrder(arguments == null || arguments.length == 0 ? null : toTag(arguments[0]));
+				return true;
+			case "order":
+				checkArgumentsArity(arguments, 0);
+				return order == null ? "" : order.name;
+			default:
+				return super.call(interpreter, arguments);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			error(e.getMessage());
+		}
+		return null;
+	}
+
+	// go(n): 1-based record number like VFP's GO n. Moving past the last record sets eof.
+	private Object go(int recno) {
+		if (recno < 1)
+			error(String.format("Record number %s is out of range.", recno));
+		row = Math.min(recno - 1, count);
+		eof = row >= count;
+		bof = false;
+		position = null;
+		return !eof;
+	}
+
+	// skip(n): moves n entries through the controlling order, or n records without one.
+	// Skipping back from end of file starts at the last entry; moving before the
+	// first one stays on it and sets bof, like VFP's SKIP -n.
+	private Object skip(int n) throws IOException {
+		if (order == null) {
+			if (row + n >= 0)
+				return go(row + 1 + n);
+			row = 0;
+			eof = count == 0;
+			bof = true;
+			position = null;
+			return false;
+		}
+		boolean backward = order.descending != n < 0;
+		if (eof) {
+			if (n >= 0)
+				return false;
+			position = order.first(!order.descending);
+			n++;
+		} else if (position == null) {
+			position = order.locate(order.key(this), row + 1);
+		}
+		for (int i = Math.abs(n); i > 0 && position != null; i--) {
+			if (!order.move(position, backward))
+				position = null;
+		}
+		bof = position == null && n < 0;
+		if (bof)
+			position = order.first(order.descending);
+		eof = !land(position);
+		return !eof && !bof;
+	}
+
+	/**********************************************************************
+	 * Writing
+	 **********************************************************************/
+
+	// REPLACE field WITH value on the current record, then moves its index entries.
+	void replace(Field field, Object value) throws IOException {
+		checkWritable();
+		byte[][] keys = cdx == null ? null : cdx.keys(this);
+		write(field, value);
+		if (cdx != null) {
+			cdx.update(this, keys, row + 1);
+			position = null;
+		}
+	}
+
+	private void write(Field field, Object value) throws IOException {
+		ByteBuffer buffer = chunk(row);
+		int base = position(row);
+		int at = base + field.offset;
+
+		if (value == null) {
+			if (field.nullBit < 0)
+				error(String.format("Field `%s` does not accept null values.", field.name));
+			setNullFlag(buffer, base, field.nullBit, true);
+			dirty = true;
+			return;
+		}
+		if (field.nullBit >= 0)
+			setNullFlag(buffer, base, field.nullBit, false);
+
+		switch (field.type) {
+		case 'C':
+			put(buffer, at, field.length, checkType(field, value, String.class).getBytes(charset), (byte)' ');
+			break;
+		case 'V':
+			byte[] text = checkType(field, value, String.class).getBytes(charset);
+			boolean shorter = text.length < field.length;
+			put(buffer, at, field.length, text, (byte)0);
+			if (shorter)
+				buffer.put(at + field.length - 1, (byte)text.length);
+			setNullFlag(buffer, base, field.varBit, shorter);
+			break;
+		case 'N': case 'F':
+			double number = checkType(field, value, Double.class);
+			String digits = String.format(Locale.ROOT, "%" + field.length + "." + field.decimals + "f", number);
+			if (digits.length() > field.length)
+				digits = "*".repeat(field.length);
+			put(buffer, at, field.length, digits.getBytes(charset), (byte)' ');
+			break;
+		case 'I':
+			buffer.putInt(at, checkType(field, value, Double.class).intValue());
+			break;
+		case 'B':
+			buffer.putDouble(at, checkType(field, value, Double.class));
+			break;
+		case 'Y':
+			buffer.putLong(at, Math.round(checkType(field, value, Double.class) * 10000));
+			break;
+		case 'L':
+			buffer.put(at, checkType(field, value, Boolean.class) ? (byte)'T' : (byte)'F');
+			break;
+		case 'D':
+			String date = checkType(field, value, String.class).replace("-", "");
+			if (!date.isEmpty() && !date.matches("\\d{8}"))
+				error(String.format("Invalid date `%s` for field `%s`, expecting yyyy-mm-dd.", value, field.name));
+			put(buffer, at, 8, date.getBytes(charset), (byte)' ');
+			break;
+		case 'T':
+			String stamp = checkType(field, value, String.class);
+			if (stamp.isEmpty()) {
+				buffer.putLong(at, 0);
+			} else {
+				LocalDateTime time = LocalDateTime.parse(stamp.length() == 10 ? stamp + "T00:00:00" : stamp.replace(' ', 'T'));
+				buffer.putInt(at, (int)(time.toLocalDate().toEpochDay() + JULIAN_EPOCH));
+				buffer.putInt(at + 4, (int)(time.toLocalTime().toNanoOfDay() / 1_000_000L));
+			}
+			break;
+		case 'M':
+			if (memo == null)
+				error(String.format("Memo file not found for field `%s`.", field.name));
+			int block = memo.write(checkType(field, value, String.class).getBytes(charset));
+			if (field.length == 4)
+				buffer.putInt(at, block);
+			else
+				put(buffer, at, field.length, String.format(Locale.ROOT, "%" + field.length + "d", block).getBytes(charset), (byte)' ');
+			break;
+		default:
+			error(String.format("Field `%s` of type %s cannot be replaced.", field.name, field.type));
+		}
+		dirty = true;
+	}
+
+	// APPEND BLANK: adds an empty record and moves to it.
+	void append() throws IOException {
+		checkWritable();
+		if (cdx != null)
+			cdx.checkMaintainable();
+		ByteBuffer record = ByteBuffer.allocate(recordLength + 1).order(ByteOrder.LITTLE_ENDIAN);
+		record.put(0, (byte)' ');
+		for (Field field : fields) {
+			byte blank = "CVNFLDM".indexOf(field.type) >= 0 && !(field.type == 'M' && field.length == 4) ? (byte)' ' : 0;
+			for (int i = 0; i < field.length; i++) {
+				record.put(field.offset + i, blank);
+			}
+		}
+		record.put(recordLength, (byte)0x1A); // end of file marker.
+		writeFully(channel, record, headerLength + (long)count * recordLength);
+
+		// the last chunk is remapped with its new size.
+		int last = (count - 1) / recordsPerChunk;
+		if (count > 0 && last < chunks.size())
+			chunks.set(last, null);
+		count++;
+		row = count - 1;
+		eof = false;
+		writeHeader();
+		if (cdx != null) {
+			cdx.update(this, null, count);
+			position = null;
+		}
+	}
+
+	private void mark(byte flag) throws IOException {
+		checkWritable();
+		chunk(row).put(position(row), flag);
+		dirty = true;
+	}
+
+	// record count and last update date, like VFP does when the table is closed.
+	private void writeHeader() throws IOException {
+		LocalDate today = LocalDate.now();
+		ByteBuffer header = ByteBuffer.allocate(7).order(ByteOrder.LITTLE_ENDIAN);
+		header.put((byte)(today.getYear() - 1900)).put((byte)today.getMonthValue()).put((byte)today.getDayOfMonth());
+		header.putInt(count);
+		header.flip();
+		writeFully(channel, header, 1);
+	}
+
+	private void flush() throws IOException {
+		if (!dirty)
+			return;
+		for (MappedByteBuffer chunk : chunks) {
+			if (chunk != null)
+				chunk.force();
+		}
+		writeHeader();
+		dirty = false;
+	}
+
+	private static void put(ByteBuffer buffer, int at, int length, byte[] value, byte pad) {
+		int n = Math.min(length, value.length);
+		buffer.put(at, value, 0, n);
+		for (int i = n; i < length; i++) {
+			buffer.put(at + i, pad);
+		}
+	}
+
+	private void setNullFlag(ByteBuffer buffer, int base, int bit, boolean on) {
+		int at = base + nullFlagsOffset + bit / 8;
+		byte flags = buffer.get(at);
+		buffer.put(at, (byte)(on ? flags | (1 << (bit % 8)) : flags & ~(1 << (bit % 8))));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T checkType(Field field, Object value, Class<T> type) {
+		if (!type.isInstance(value))
+			error(String.format("Invalid value type for field `%s`, expecting %s.", field.name, type.getSimpleName()));
+		return (T)value;
+	}
+
+	/**********************************************************************
+	 * Mapping
+	 **********************************************************************/
+
+	// chunk holding `record`, mapped on first use.
+	private MappedByteBuffer chunk(int record) throws IOException {
+		int index = record / recordsPerChunk;
+		while (chunks.size() <= index)
+			chunks.add(null);
+		MappedByteBuffer chunk = chunks.get(index);
+		if (chunk == null) {
+			long start = headerLength + (long)index * recordsPerChunk * recordLength;
+			long records = Math.min(recordsPerChunk, count - (long)index * recordsPerChunk);
+			chunk = channel.map(readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+					start, records * recordLength);
+			chunk.order(ByteOrder.LITTLE_ENDIAN);
+			chunks.set(index, chunk);
+		}
+		return chunk;
+	}
+
+	private int position(int record) {
+		return (record % recordsPerChunk) * recordLength;
+	}
+
+	/**
+	 * Memo: the .fpt file holding memo field blocks. Each block starts with
+	 * its type and length as big-endian integers.
+	 */
+	static class Memo {
+		private final FileChannel channel;
+		private final boolean readonly;
+		private final int blockSize;
+		private MappedByteBuffer map;
+
+		Memo(File file, boolean readonly) throws IOException {
+			this.readonly = readonly;
+			this.channel = readonly
+					? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+					: FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			ByteBuffer header = ByteBuffer.allocate(8);
+			readFully(channel, header, 0);
+			int size = header.getShort(6) & 0xFFFF;
+			this.blockSize = size == 0 ? 64 : size;
+		}
+
+		byte[] read(int block) throws IOException {
+			if (map == null || (long)block * blockSize + 8 > map.limit())
+				map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int at = block * blockSize;
+			int length = map.getInt(at + 4);
+			return bytes(map, at + 8, length);
+		}
+
+		// appends a text block at the next free block, returns its number.
+		int write(byte[] value) throws IOException {
+			if (readonly)
+				throw new IOException("Table is read-only.");
+			ByteBuffer header = ByteBuffer.allocate(4);
+			readFully(channel, header, 0);
+			int block = header.getInt(0);
+			int blocks = (8 + value.length + blockSize - 1) / blockSize;
+
+			ByteBuffer data = ByteBuffer.allocate(blocks * blockSize);
+			data.putInt(1).putInt(value.length).put(value);
+			data.clear();
+			writeFully(channel, data, (long)block * blockSize);
+			header.clear();
+			header.putInt(0, block + blocks);
+			writeFully(channel, header, 0);
+			return block;
+		}
+
+		void close() throws IOException {
+			map = null;
+			channel.close();
+		}
+	}
+
+	/**********************************************************************
+	 * Helpers
+	 **********************************************************************/
+
+	static final long JULIAN_EPOCH = 2440588; // julian day number of 1970-01-01.
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of file.");
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	// a file next to `file` with another extension, in either case.
+	private static File sibling(File file, String extension) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot < 0 ? name : name.substring(0, dot);
+		for (String candidate : new String[] {base + extension, base + extension.toUpperCase()}) {
+			File sibling = new File(file.getAbsoluteFile().getParentFile(), candidate);
+			if (sibling.exists())
+				return sibling;
+		}
+		return null;
+	}
+
+	private static Charset charsetOf(int codePage) {
+		switch (codePage) {
+		case 0x01: return Charset.forName("IBM437");
+		case 0x02: return Charset.forName("IBM850");
+		case 0x64: return Charset.forName("IBM852");
+		case 0x65: return Charset.forName("IBM866");
+		case 0xC8: return Charset.forName("windows-1250");
+		case 0xC9: return Charset.forName("windows-1251");
+		default: return Charset.forName("windows-1252");
+		}
+	}
+
+	private static String[] names(Field[] fields) {
+		String[] names = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			names[i] = fields[i].name;
+		}
+		return names;
+	}
+
+	private static int[] kinds(Field[] fields) {
+		int[] kinds = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			switch (fields[i].type) {
+			case 'N': case 'F': case 'I': case 'B': case 'Y':
+				kinds[i] = NUMBER;
+				break;
+			case 'C': case 'V': case 'D': case 'T': case 'M':
+				kinds[i] = STRING;
+				break;
+			case 'L':
+				kinds[i] = BOOLEAN;
+				break;
+			default:
+				kinds[i] = OBJECT;
+			}
+		}
+		return kinds;
+	}
+
+	private Field toField(ArgValue arg) {
+		if (!(arg.value instanceof String))
+			error("Invalid argument type for this function, expecting field name.");
+		int index = columns.indexOf((String)arg.value);
+		if (index == 0)
+			error(String.format("Field not found `%s`", arg.value));
+		return fields[index - 1];
+	}
+
+	private String toTag(ArgValue arg) {
+		if (!(arg.value instanceof String))
+			error("Invalid argument type for this function, expecting tag name.");
+		return ((String)arg.value).toLowerCase();
+	}
+
+	private void checkRecord() {
+		if (eof)
+			error("No current record, the table is at end of file.");
+	}
+
+	private void checkWritable() {
+		if (readonly)
+			error("Table is read-only.");
+	}
+
+	private int toInt(ArgValue arg) {
+		if (!(arg.value instanceof Double))
+			error("Invalid argument type for this function, expecting integer.");
+		return ((Double)arg.value).intValue();
+	}
+
+	private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
+		int got = arguments == null ? 0 : arguments.length;
+		if (got != numberOfArgs) {
+			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, got));
+		}
+	}
+}
@@ -114,6 +114,11 @@ public abstract class Expr {
 		final boolean computed;
 		final Expr parentObject;
 		final Expr property;
+		// cursor field site cache: the column layout last seen here and its index.
+		RuntimeCursor.Columns cachedColumns;
+		int cachedIndex;
+		// for connection.open(): the fields read from its cursor, see Projection.
+		String[] inferredFields;
 		
 		public Member(Token token, boolean computed, Expr parentObject, Expr property) {
 			super(token);
@@ -152,9 +157,9 @@ public abstract class Expr {
 	 */
 	static class CreateObject extends Expr {
 		final Token name;
-		List<Expr> arguments;
+		List<NamedExp> arguments;
 		
-		public CreateObject(Token token, Token name, List<Expr> arguments) {
+		public CreateObject(Token token, Token name, List<NamedExp> arguments) {
 			super(token);
 			this.name = name;
 			this.arguments = arguments;
@@ -0,0 +1,328 @@
+package core;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * GroupBy: hash aggregation of a cursor, cursor.groupby(keys, aggregates).
+ *
+ *   local totals = sales.groupby("region, month", "sum(amount) as total, count(*) as n")
+ *
+ * Rows are grouped by the key fields in a hash table; the accumulators are
+ * primitive arrays indexed by group number. Once the table holds `budget`
+ * groups, rows of new groups are written to partition files by key hash
+ * and aggregated one partition at a time afterwards, so memory stays
+ * bounded by the budget.
+ *
+ * Like SQL, SUM, AVG, MIN and MAX skip nulls and COUNT(field) counts the
+ * non-null values.
+ */
+public class GroupBy {
+	static final int DEFAULT_BUDGET = 1 << 20; // groups held in memory.
+	private static final Pattern AGGREGATE = Pattern.compile(
+			"(?i)(sum|count|avg|min|max)\\s*\\(\\s*(\\*|\\w+)\\s*\\)(?:\\s+as\\s+(\\w+))?");
+
+	private static final int SUM = 0;
+	private static final int COUNT = 1;
+	private static final int AVG = 2;
+	private static final int MIN = 3;
+	private static final int MAX = 4;
+
+	private final int[] keyColumns; // 1-based columns of the source.
+	private final int[] functions;
+	private final int[] inputs; // 1-based columns of the source, 0 for count(*).
+	private final boolean[] numeric; // MIN/MAX over a numeric column.
+	private final String[] labels;
+	private final RuntimeCursor.Columns output;
+	private final int budget;
+	private int groups = 0; // rows written to the result.
+
+	/**
+	 * `keys` is a comma-separated list of fields, empty for a single total
+	 * row. `aggregates` lists calls like "sum(amount) as total"; without an
+	 * alias the result field is named function_field, or cnt for count(*).
+	 * Throws IllegalArgumentException for unknown fields or functions.
+	 */
+	GroupBy(RuntimeCursor.Columns source, String keys, String aggregates, int budget) {
+		this.budget = budget;
+
+		List<String> names = new ArrayList<>();
+		List<Integer> kinds = new ArrayList<>();
+		String[] keyNames = keys.trim().isEmpty() ? new String[0] : keys.split(",");
+		keyColumns = new int[keyNames.length];
+		for (int i = 0; i < keyNames.length; i++) {
+			String name = keyNames[i].trim().toLowerCase();
+			keyColumns[i] = column(source, name);
+			names.add(name);
+			kinds.add(source.kinds[keyColumns[i] - 1]);
+		}
+
+		String[] calls = aggregates.split(",");
+		functions = new int[calls.length];
+		inputs = new int[calls.length];
+		numeric = new boolean[calls.length];
+		labels = new String[calls.length];
+		for (int i = 0; i < calls.length; i++) {
+			Matcher matcher = AGGREGATE.matcher(calls[i].trim());
+			if (!matcher.matches())
+				throw new IllegalArgumentException(String.format("Invalid aggregate `%s`, expecting sum|count|avg|min|max(field) [as name].", calls[i].trim()));
+			String function = matcher.group(1).toLowerCase();
+			String field = matcher.group(2).toLowerCase();
+			functions[i] = Arrays.asList("sum", "count", "avg", "min", "max").indexOf(function);
+			if (field.equals("*") && functions[i] != COUNT)
+				throw new IllegalArgumentException(String.format("%s(*) is not supported, name a field.", function));
+			inputs[i] = field.equals("*") ? 0 : column(source, field);
+
+			int kind = RuntimeCursor.NUMBER;
+			if (functions[i] == MIN || functions[i] == MAX) {
+				kind = source.kinds[inputs[i] - 1];
+				numeric[i] = kind == RuntimeCursor.NUMBER;
+			}
+			labels[i] = function + "(" + field + ")";
+			names.add(matcher.group(3) != null ? matcher.group(3).toLowerCase() : field.equals("*") ? "cnt" : function + "_" + field);
+			kinds.add(kind);
+		}
+
+		int[] outputKinds = new int[kinds.size()];
+		for (int i = 0; i < outputKinds.length; i++) {
+			outputKinds[i] = kinds.get(i);
+		}
+		output = new RuntimeCursor.Columns(names.toArray(new String[0]), outputKinds);
+	}
+
+	private static int column(RuntimeCursor.Columns source, String name) {
+		int column = source.indexOf(name);
+		if (column == 0)
+			throw new IllegalArgumentException(String.format("Field not found `%s`", name));
+		return column;
+	}
+
+	/**
+	 * Aggregates the rows of `cursor` from the current one to the end into
+	 * a LocalCursor with the key fields followed by the aggregates.
+	 */
+	LocalCursor run(RuntimeCursor cursor) throws SQLException, IOException {
+		LocalCursor.Builder builder = new LocalCursor.Builder(output);
+		Table table = new Table(0);
+		try {
+			while (!cursor.eof) {
+				// only the fields the aggregation reads: keys, then one input per aggregate.
+				Object[] row = new Object[keyColumns.length + inputs.length];
+				for (int i = 0; i < keyColumns.length; i++) {
+					row[i] = cursor.field(keyColumns[i]);
+				}
+				for (int i = 0; i < inputs.length; i++) {
+					row[keyColumns.length + i] = inputs[i] == 0 ? Boolean.TRUE : cursor.field(inputs[i]);
+				}
+				table.add(row);
+				cursor.moveNext();
+			}
+			table.drain(builder);
+		} finally {
+			table.discard();
+		}
+		// without keys there is always one row, even for no input.
+		if (keyColumns.length == 0 && groups == 0)
+			builder.addRow(new Table(0).result(-1));
+		return builder.build();
+	}
+
+	/**
+	 * Key: the key fields of one group.
+	 */
+	private static final class Key {
+		final Object[] values;
+		final int hash;
+
+		Key(Object[] row, int length) {
+			this.values = Arrays.copyOf(row, length);
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && Arrays.equals(values, ((Key)other).values);
+		}
+	}
+
+	/**
+	 * Table: the groups of one pass, with their accumulators, and the
+	 * partition files for the rows that did not fit.
+	 */
+	private class Table {
+		final int depth;
+		final Map<Key, Integer> index = new HashMap<>();
+		final List<Key> keys = new ArrayList<>();
+		double[][] numbers; // SUM/AVG totals, or numeric MIN/MAX.
+		long[][] counts; // non-null values seen.
+		Object[][] extremes; // MIN/MAX of other types.
+		SpillFile[] partitions; // rows of the groups that did not fit.
+
+		Table(int depth) {
+			this.depth = depth;
+			int capacity = 16;
+			numbers = new double[functions.length][capacity];
+			counts = new long[functions.length][capacity];
+			extremes = new Object[functions.length][];
+			for (int i = 0; i < functions.length; i++) {
+				if ((functions[i] == MIN || functions[i] == MAX) && !numeric[i])
+					extremes[i] = new Object[capacity];
+			}
+		}
+
+		void add(Object[] row) throws IOException {
+			Key key = new Key(row, keyColumns.length);
+			Integer group = index.get(key);
+			if (group == null) {
+				if (keys.size() >= budget && depth < SpillFile.MAX_DEPTH) {
+					spill(key.hash, row);
+					return;
+				}
+				group = keys.size();
+				if (group == counts[0].length)
+					grow();
+				keys.add(key);
+				index.put(key, group);
+			}
+			accumulate(group, row);
+		}
+
+		private void grow() {
+			int capacity = LocalCursor.Column.grow(keys.size());
+			for (int i = 0; i < functions.length; i++) {
+				numbers[i] = Arrays.copyOf(numbers[i], capacity);
+				counts[i] = Arrays.copyOf(counts[i], capacity);
+				if (extremes[i] != null)
+					extremes[i] = Arrays.copyOf(extremes[i], capacity);
+			}
+		}
+
+		private void accumulate(int group, Object[] row) {
+			for (int i = 0; i < functions.length; i++) {
+				Object value = row[keyColumns.length + i];
+				if (value == null)
+					continue;
+				boolean first = counts[i][group] == 0;
+				switch (functions[i]) {
+				case SUM: case AVG:
+					numbers[i][group] += number(i, value);
+					break;
+				case MIN: case MAX:
+					if (numeric[i]) {
+						double d = number(i, value);
+						if (first || (functions[i] == MIN ? d < numbers[i][group] : d > numbers[i][group]))
+							numbers[i][group] = d;
+					} else {
+						if (first) {
+							extremes[i][group] = value;
+						} else {
+							int c = compare(i, value, extremes[i][group]);
+							if (functions[i] == MIN ? c < 0 : c > 0)
+								extremes[i][group] = value;
+						}
+					}
+					break;
+				}
+				counts[i][group]++;
+			}
+		}
+
+		private double number(int aggregate, Object value) {
+			if (!(value instanceof Double))
+				throw new IllegalArgumentException(String.format("%s expects numbers, got: %s", labels[aggregate], Interpreter.stringify(value)));
+			return (Double)value;
+		}
+
+		@SuppressWarnings("unchecked")
+		private int compare(int aggregate, Object a, Object b) {
+			if (a instanceof Comparable && a.getClass() == b.getClass())
+				return ((Comparable<Object>)a).compareTo(b);
+			throw new IllegalArgumentException(String.format("%s cannot compare %s with %s.", labels[aggregate],
+					a.getClass().getSimpleName(), b.getClass().getSimpleName()));
+		}
+
+		// result row of a group, or of no rows at all when `group` is -1.
+		Object[] result(int group) {
+			Object[] values = new Object[keyColumns.length + functions.length];
+			if (group >= 0)
+				System.arraycopy(keys.get(group).values, 0, values, 0, keyColumns.length);
+			for (int i = 0; i < functions.length; i++) {
+				long count = group >= 0 ? counts[i][group] : 0;
+				Object value;
+				switch (functions[i]) {
+				case COUNT:
+					value = (double)count;
+					break;
+				case AVG:
+					value = count == 0 ? null : (Object)(numbers[i][group] / count);
+					break;
+				default:
+					if (count == 0)
+						value = null;
+					else
+						value = extremes[i] != null ? extremes[i][group] : (Object)numbers[i][group];
+				}
+				values[keyColumns.length + i] = value;
+			}
+			return values;
+		}
+
+		// writes the groups, then aggregates every partition with a table of its own.
+		void drain(LocalCursor.Builder builder) throws IOException {
+			for (int group = 0; group < keys.size(); group++) {
+				builder.addRow(result(group));
+				groups++;
+			}
+			if (partitions == null)
+				return;
+			for (int p = 0; p < SpillFile.PARTITIONS; p++) {
+				if (partitions[p] == null)
+					continue;
+				Table table = new Table(depth + 1);
+				try {
+					partitions[p].rewind();
+					Object[] row;
+					while ((row = partitions[p].read()) != null) {
+						table.add(row);
+					}
+					partitions[p].delete();
+					partitions[p] = null;
+					table.drain(builder);
+				} finally {
+					table.discard();
+				}
+			}
+		}
+
+		private void spill(int hash, Object[] row) throws IOException {
+			if (partitions == null)
+				partitions = new SpillFile[SpillFile.PARTITIONS];
+			int p = SpillFile.partition(hash, depth);
+			if (partitions[p] == null)
+				partitions[p] = new SpillFile(row.length);
+			partitions[p].write(row);
+		}
+
+		// deletes the partition files left after an error.
+		void discard() {
+			if (partitions == null)
+				return;
+			for (SpillFile partition : partitions) {
+				if (partition != null)
+					partition.delete();
+			}
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package core;
 
+import java.sql.SQLException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import core.Expr.IfExpr;
 import core.Expr.Macro;
@@ -18,15 +20,21 @@ import core.Stmt.Exit;
 import core.Stmt.For;
 import core.Stmt.Function;
 import core.Stmt.If;
+import core.Stmt.Index;
 import core.Stmt.Loop;
 import core.Stmt.Module;
 import core.Stmt.Release;
 import core.Stmt.Return;
+import core.Stmt.Scan;
+import core.Stmt.Seek;
+import core.Stmt.SetOrder;
 import core.Stmt.SimpleAssignment;
+import core.Stmt.Transaction;
 import core.Stmt.Var;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {		
 	final Environment globals = new Environment();	
+	static final int SCAN_BLOCK_SIZE = 256; // rows SCAN reads ahead from a database cursor.
 	private Environment environment = globals; // our local env starts being the global env.
 	
 	public Interpreter() {
@@ -40,6 +48,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	 * FUNCTION HELPERS
 	 ************************************************************/	
 	void interpret(List<Stmt> statements) {
+		Projection.analyze(statements);
 		try {
 			for (Stmt stmt : statements) {
 				execute(stmt);
@@ -72,6 +81,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return object.toString();
 	}
 	
+	// same rules as stringify() but writes straight into `out`,
+	// so numbers and booleans never become an intermediate String.
+	public static StringBuilder stringify(StringBuilder out, Object object) {
+		if (object instanceof Double) {
+			double value = (Double)object;
+			if (value == Math.rint(value) && Math.abs(value) < 1e7) { // Double.toString() would end with ".0"
+				if (value == 0 && 1 / value < 0) return out.append("-0");
+				return out.append((long)value);
+			}
+			return out.append(value);
+		}
+		if (object instanceof Boolean) return out.append((boolean)(Boolean)object);
+		if (object instanceof CharSequence) return out.append((CharSequence)object);
+		return out.append(stringify(object));
+	}
+	
 	// converts to double format e.g: true -> "1"
 	private String doubleFormat(Object object) {
 		if (object == null) return "0";
@@ -160,6 +185,36 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return a.equals(b);
 	}
 	
+	// cursor.close() is a method call, not a read of the `close` field.
+	private Object evaluateCallee(Expr callee) {
+		if (callee instanceof Expr.Member) {
+			Expr.Member member = (Expr.Member)callee;
+			Object parent = evaluate(member.parentObject);
+			if (parent instanceof RuntimeCursor && !member.computed) {
+				return parent;
+			}
+			return member(member, parent);
+		}
+		return evaluate(callee);
+	}
+	
+	private ArgValue[] evaluateArguments(List<Expr.NamedExp> args) {
+		int argLen = args.size();
+		final ArgValue[] arguments = new ArgValue[argLen];
+		Object value = null;
+		
+		for (int i = 0; i < argLen; i++) {
+			Expr.NamedExp arg = args.get(i);
+			if (arg.value instanceof Expr.Identifier && ((Expr.Identifier)arg.value).token.lexeme.equals("_")) {
+				value = null;
+			} else {					
+				value = evaluate(arg.value);
+			}
+			arguments[i] = new ArgValue(arg.token, arg.alias, value);
+		}
+		return arguments;
+	}
+	
 	private Environment resolveMemberEnvironment(Expr.Member member) {
 		Object result = evaluate(member.parentObject);
 				
@@ -286,25 +341,41 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitMemberExpr(Expr.Member expr) {
-		Object left = evaluate(expr.parentObject);			
+		return member(expr, evaluate(expr.parentObject));
+	}
+	
+	private Object member(Expr.Member expr, Object left) {
 		if (!expr.computed) {			
 			if (left instanceof Environment || left instanceof RuntimeCursor) {
 				if (left instanceof Environment)
 					return ((Environment)left).lookUp(expr.property.token);
 				else
-					try {
-						return ((RuntimeCursor)left).cursor.getObject(expr.property.token.lexeme);						
-					} catch(Exception e) {
-						throw new RuntimeError(expr.token, e.getMessage());
-					}
+					return cursorField(expr, (RuntimeCursor)left);
 			}
 		}
 		return left;
 	}
+	
+	// Field names are resolved to a column index once per cursor layout and cached on the site.
+	private Object cursorField(Expr.Member expr, RuntimeCursor cursor) {
+		if (expr.cachedColumns != cursor.columns) {
+			int index = cursor.columns.indexOf(expr.property.token.lexeme);
+			if (index == 0) {
+				throw new RuntimeError(expr.property.token, "Field not found `" + expr.property.token.lexeme + "`");
+			}
+			expr.cachedIndex = index;
+			expr.cachedColumns = cursor.columns;
+		}
+		try {
+			return cursor.field(expr.cachedIndex);
+		} catch(Exception e) {
+			throw new RuntimeError(expr.token, e.getMessage());
+		}
+	}
 
 	@Override
 	public Object visitCallExpr(Expr.Call expr) {
-		final Object callee = evaluate(expr.callee);
+		final Object callee = evaluateCallee(expr.callee);
 		
 		if (!(callee instanceof CallableObject)) {
 			throw new RuntimeError(expr.token, "Not a function: " + expr.callee.token.lexeme);
@@ -320,24 +391,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		
 		// Evaluate arguments		
 		if (expr.arguments.size() > 0) {
-			int argLen = expr.arguments.size();
-			final ArgValue[] arguments = new ArgValue[argLen];
-			Object value = null;
-			
-			for (int i = 0; i < argLen; i++) {
-				Expr.NamedExp arg = expr.arguments.get(i);
-				if (arg.value instanceof Expr.Identifier && ((Expr.Identifier)arg.value).token.lexeme.equals("_")) {
-					value = null;
-				} else {					
-					value = evaluate(arg.value);
-				}
-				arguments[i] = new ArgValue(arg.token, arg.alias, value);
-			}
-			callable.setCallee(expr.callee);
-			return callable.call(this, arguments);
+			final ArgValue[] arguments = evaluateArguments(expr.arguments);
+			return callable.call(this, expr.callee, arguments);
 		}
-		callable.setCallee(expr.callee);
-		return callable.call(this, null);
+		return callable.call(this, expr.callee, null);
 	}
 
 	@Override
@@ -345,13 +402,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		Object obj = lookUpVariable(expr.name);
 		
 		if (obj instanceof RuntimeArray) {
-			RuntimeArray array = (RuntimeArray)obj;
-			if (expr.arguments != null && expr.arguments.size() > 0) {
-				for (Expr exp : expr.arguments) {
-					array.elements.add(evaluate(exp));
-				}
-			}
-			return array;
+			// every createobject() gets its own storage, sized from the arguments.
+			return RuntimeArray.create(expr.name, evaluateArguments(expr.arguments));
+		}
+		if (obj instanceof RuntimeBigArray) {
+			return RuntimeBigArray.create(expr.name, evaluateArguments(expr.arguments));
+		}
+		if (obj instanceof RuntimeVector) {
+			return RuntimeVector.create(expr.name, evaluateArguments(expr.arguments));
+		}
+		if (obj instanceof RuntimeConnection) {
+			// each connection object keeps its own properties and JDBC state.
+			return new RuntimeConnection();
+		}
+		if (obj instanceof RuntimeStringBuilder) {
+			return RuntimeStringBuilder.create(expr.name, evaluateArguments(expr.arguments));
 		}
 		return obj;
 	}
@@ -396,7 +461,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			Object initializer = null;
 			for (Stmt.VarDecl v : stmt.declarations) {
 				if (v.initializer != null) {
-					initializer = evaluate(v.initializer);
+					final SqlCursor replaced = replacing(stmt.scope == Kind.LOCAL ? environment : globals, v.name.token);
+					try {
+						initializer = evaluate(v.initializer);
+					} finally {
+						if (replaced != null) replaced.replacing = false;
+					}
+					share(v.initializer, initializer);
 				} else {
 					initializer = v.defaultValue;
 				}
@@ -580,7 +651,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 	@Override
 	public Void visitSimpleAssignment(SimpleAssignment stmt) {
-		Object value = evaluate(stmt.value);
+		final SqlCursor replaced = stmt.left instanceof Expr.Identifier 
+				? replacing(environment.resolve(stmt.left.token, false), stmt.left.token) : null;
+		Object value;
+		try {
+			value = evaluate(stmt.value);
+		} finally {
+			if (replaced != null) replaced.replacing = false;
+		}
+		share(stmt.value, value);
 		
 		if (stmt.left instanceof Expr.Identifier) {			
 			environment.assign(stmt.left.token, value);
@@ -591,6 +670,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 		return null;
 	}
+	// marks the SQL cursor `name` holds in `env` as being replaced, see StatementCache.acquire().
+	private static SqlCursor replacing(Environment env, Token name) {
+		if (env == null)
+			return null;
+		final Object[] varPack = (Object[])env.record.get(name.lexeme.toLowerCase());
+		if (varPack == null || !(varPack[1] instanceof SqlCursor) || ((SqlCursor)varPack[1]).shared)
+			return null;
+		final SqlCursor cursor = (SqlCursor)varPack[1];
+		cursor.replacing = true;
+		return cursor;
+	}
+	
+	// a cursor stored from anything but a fresh call may live in two variables.
+	private static void share(Expr expr, Object value) {
+		if (value instanceof SqlCursor && !(expr instanceof Expr.Call))
+			((SqlCursor)value).shared = true;
+	}
+	
 	@Override
 	public Void visitConstantStmt(Const stmt) {
 		Object value = evaluate(stmt.value);
@@ -671,4 +768,194 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		// TODO Auto-generated method stub
 		return null;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public Void visitScanStmt(Scan stmt) {
+		final Object value = evaluate(stmt.cursor);
+		if (!(value instanceof RuntimeCursor)) {
+			throw new RuntimeError(stmt.token, "Expect a cursor in 'SCAN' statement.");
+		}
+		final RuntimeCursor cursor = (RuntimeCursor)value;
+		
+		// fields are visible by name inside the loop, bound once per row;
+		// only the ones the loop reads, so the others are never decoded.
+		if (!stmt.analyzed) {
+			stmt.reads = Projection.reads(stmt);
+			stmt.analyzed = true;
+		}
+		final Environment scanEnv = new Environment(environment);
+		final String[] names = cursor.columns.names;
+		Object[][] fields = new Object[names.length][];
+		int[] indexes = new int[names.length];
+		int bound = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (stmt.reads != null && !stmt.reads.contains(names[i]))
+				continue;
+			scanEnv.define(names[i], null, VarType.VARIABLE);
+			fields[bound] = (Object[])scanEnv.record.get(names[i]);
+			indexes[bound++] = i + 1;
+		}
+		fields = Arrays.copyOf(fields, bound);
+		indexes = Arrays.copyOf(indexes, bound);
+		
+		// Rushmore: records the indexes rule out are skipped without being read.
+		final Rushmore.Plan plan = stmt.condition == null ? null
+				: Rushmore.plan(stmt.condition, cursor, aliasOf(stmt.cursor), this::evaluate);
+		
+		final Environment previous = this.environment;
+		try {
+			while (!cursor.eof) {
+				if (plan != null) {
+					final int row = cursor.rowIndex();
+					if (!plan.rows.get(row)) {
+						final int next = plan.rows.nextSetBit(row);
+						if (!cursor.jumpTo(next < 0 ? plan.count : next)) {
+							cursor.moveNext();
+						}
+						continue;
+					}
+				}
+				cursor.readAhead(SCAN_BLOCK_SIZE);
+				for (int i = 0; i < fields.length; i++) {
+					fields[i][1] = cursor.field(indexes[i]);
+				}
+				this.environment = scanEnv;
+				if (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
+					try {
+						executeBlock(stmt.block.statements, scanEnv);
+					} catch(LoopException e) {
+						// next row.
+					} catch(ExitException e) {
+						break; // the cursor stays on this row.
+					}
+				}
+				cursor.moveNext();
+			}
+		} catch(SQLException e) {
+			throw new RuntimeError(stmt.token, e.getMessage());
+		} finally {
+			this.environment = previous;
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitIndexStmt(Index stmt) {
+		final LocalCursor cursor = localCursor(stmt.cursor, stmt.token);
+		final Object[] keys = new Object[cursor.count];
+		final int row = cursor.row;
+		final boolean eof = cursor.eof;
+		final CursorIndex order = cursor.order;
+		
+		// the key expression reads the cursor fields, so walk the rows in record order.
+		cursor.order = null;
+		try {
+			for (int i = 0; i < cursor.count; i++) {
+				cursor.row = i;
+				cursor.eof = false;
+				keys[i] = evaluate(stmt.key);
+			}
+		} finally {
+			cursor.row = row;
+			cursor.eof = eof;
+			cursor.order = order;
+		}
+		try {
+			final String expression = Rushmore.canonical(stmt.key, aliasOf(stmt.cursor), cursor.columns);
+			cursor.index(stmt.tag.lexeme.toLowerCase(), expression, keys);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeError(stmt.token, e.getMessage());
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitSeekStmt(Seek stmt) {
+		final RuntimeCursor cursor = cursor(stmt.cursor, stmt.token);
+		final Object key = evaluate(stmt.key);
+		try {
+			cursor.seek(key, stmt.tag == null ? null : stmt.tag.lexeme.toLowerCase());
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeError(stmt.token, e.getMessage());
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitSetOrderStmt(SetOrder stmt) {
+		final RuntimeCursor cursor = cursor(stmt.cursor, stmt.token);
+		try {
+			cursor.setOrder(stmt.tag == null ? null : stmt.tag.lexeme.toLowerCase());
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeError(stmt.token, e.getMessage());
+		}
+		return null;
+	}
+	
+	/**
+	 * TRANSACTION commits when the block ends, also through RETURN or EXIT,
+	 * and rolls back when an error leaves it. Inside an open transaction the
+	 * block is simply part of it.
+	 */
+	@Override
+	public Void visitTransactionStmt(Transaction stmt) {
+		final Object value = evaluate(stmt.connection);
+		if (!(value instanceof RuntimeConnection)) {
+			throw new RuntimeError(stmt.token, "Expect a connection in 'TRANSACTION' statement.");
+		}
+		final RuntimeConnection.CallableConnection connection = ((RuntimeConnection)value).callable;
+		if (connection.inTransaction) {
+			execute(stmt.block);
+			return null;
+		}
+		try {
+			connection.begin();
+		} catch (SQLException e) {
+			throw new RuntimeError(stmt.token, e.getMessage());
+		}
+		connection.inBlock = true;
+		boolean failed = true;
+		try {
+			execute(stmt.block);
+			failed = false;
+		} catch (ReturnException | ExitException | LoopException e) {
+			failed = false;
+			throw e;
+		} finally {
+			connection.inBlock = false;
+			try {
+				if (failed)
+					connection.rollback();
+				else
+					connection.commit();
+			} catch (SQLException e) {
+				if (!failed)
+					throw new RuntimeError(stmt.token, e.getMessage());
+				// the error that left the block is reported.
+			}
+		}
+		return null;
+	}
+	
+	// the variable naming a cursor, so `alias.field` can be told apart from other members.
+	private static String aliasOf(Expr expr) {
+		return expr instanceof Expr.Identifier ? expr.token.lexeme : null;
+	}
+	
+	private RuntimeCursor cursor(Expr expr, Token token) {
+		final Object cursor = evaluate(expr);
+		if (!(cursor instanceof RuntimeCursor)) {
+			throw new RuntimeError(token, "Expect a cursor.");
+		}
+		return (RuntimeCursor)cursor;
+	}
+	
+	// INDEX ON builds indexes for cursors held in memory.
+	private LocalCursor localCursor(Expr expr, Token token) {
+		final Object cursor = evaluate(expr);
+		if (!(cursor instanceof LocalCursor)) {
+			throw new RuntimeError(token, "Expect a local cursor, use fetch() or materialize() first.");
+		}
+		return (LocalCursor)cursor;
+	}
+}
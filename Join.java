@@ -0,0 +1,296 @@
+package core;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Join: hash join of two cursors, cursor.join(other, leftKey, rightKey[, type]).
+ *
+ *   local orders = sales.join(customers, "custid", "id", "left")
+ *
+ * The smaller side, when both cursors know their size, is loaded into a
+ * hash table on its key and the other side is streamed against it. Types
+ * are inner, left (unmatched left rows get nulls), semi (left rows with a
+ * match) and anti (left rows without one). Inner and left joins return
+ * the left fields followed by the right ones; a right field named like a
+ * left one is renamed name_b.
+ *
+ * Null keys never match. Character keys are compared without trailing
+ * blanks, so padded DBF fields match SQL values.
+ *
+ * When the table side passes `budget` rows, both sides are split into
+ * partition files by key hash and joined one partition at a time (grace
+ * hash join).
+ */
+public class Join {
+	static final int DEFAULT_BUDGET = 1 << 21; // rows of the table side held in memory.
+
+	static final int INNER = 0;
+	static final int LEFT = 1;
+	static final int SEMI = 2;
+	static final int ANTI = 3;
+
+	private final int type;
+	private final int leftKey; // 0-based columns.
+	private final int rightKey;
+	private final int leftWidth;
+	private final int rightWidth;
+	private final RuntimeCursor.Columns output;
+	private final int budget;
+	private boolean buildLeft; // the table holds the left rows and the right ones are streamed.
+
+	/**
+	 * Throws IllegalArgumentException for unknown fields or join types.
+	 */
+	Join(RuntimeCursor.Columns left, RuntimeCursor.Columns right, String leftKey, String rightKey, String type, int budget) {
+		this.type = typeOf(type);
+		this.leftKey = column(left, leftKey) - 1;
+		this.rightKey = column(right, rightKey) - 1;
+		this.leftWidth = left.names.length;
+		this.rightWidth = right.names.length;
+		this.budget = budget;
+
+		if (this.type == SEMI || this.type == ANTI) {
+			output = left;
+		} else {
+			String[] names = new String[leftWidth + rightWidth];
+			int[] kinds = new int[names.length];
+			System.arraycopy(left.names, 0, names, 0, leftWidth);
+			System.arraycopy(left.kinds, 0, kinds, 0, leftWidth);
+			for (int i = 0; i < rightWidth; i++) {
+				String name = right.names[i];
+				names[leftWidth + i] = left.indexOf(name) > 0 ? name + "_b" : name;
+				kinds[leftWidth + i] = right.kinds[i];
+			}
+			output = new RuntimeCursor.Columns(names, kinds);
+		}
+	}
+
+	private static int typeOf(String type) {
+		switch (type.toLowerCase()) {
+		case "inner": return INNER;
+		case "left": return LEFT;
+		case "semi": return SEMI;
+		case "anti": return ANTI;
+		default:
+			throw new IllegalArgumentException(String.format("Invalid join type `%s`, expecting inner, left, semi or anti.", type));
+		}
+	}
+
+	private static int column(RuntimeCursor.Columns columns, String name) {
+		int column = columns.indexOf(name.trim());
+		if (column == 0)
+			throw new IllegalArgumentException(String.format("Field not found `%s`", name.trim()));
+		return column;
+	}
+
+	/**
+	 * Joins the rows of both cursors from their current ones to the end
+	 * into a LocalCursor.
+	 */
+	LocalCursor run(RuntimeCursor left, RuntimeCursor right) throws SQLException, IOException {
+		int leftCount = left.recordCount();
+		int rightCount = right.recordCount();
+		buildLeft = leftCount >= 0 && rightCount >= 0 && leftCount < rightCount;
+
+		LocalCursor.Builder builder = new LocalCursor.Builder(output);
+		Source build = buildLeft ? new CursorSource(left) : new CursorSource(right);
+		Source probe = buildLeft ? new CursorSource(right) : new CursorSource(left);
+		join(build, probe, 0, builder);
+		return builder.build();
+	}
+
+	/**
+	 * Source: rows of one side, from a cursor or a partition file.
+	 */
+	private interface Source {
+		// the next row, or null past the last one.
+		Object[] next() throws SQLException, IOException;
+	}
+
+	private static class CursorSource implements Source {
+		private final RuntimeCursor cursor;
+
+		CursorSource(RuntimeCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		public Object[] next() throws SQLException {
+			if (cursor.eof)
+				return null;
+			Object[] row = new Object[cursor.columns.names.length];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = cursor.field(i + 1);
+			}
+			cursor.moveNext();
+			return row;
+		}
+	}
+
+	private static Source of(SpillFile file) throws IOException {
+		if (file == null)
+			return () -> null;
+		file.rewind();
+		return file::read;
+	}
+
+	// join key of a row, null when it can never match.
+	private static Object key(Object[] row, int column) {
+		Object value = row[column];
+		if (value instanceof String)
+			return ((String)value).stripTrailing();
+		return value;
+	}
+
+	private void join(Source build, Source probe, int depth, LocalCursor.Builder builder) throws SQLException, IOException {
+		int buildKey = buildLeft ? leftKey : rightKey;
+		int probeKey = buildLeft ? rightKey : leftKey;
+		Table table = new Table();
+		SpillFile[] builds = null;
+		SpillFile[] probes = null;
+		try {
+			Object[] row;
+			while ((row = build.next()) != null) {
+				if (builds == null && table.rows.size() >= budget && depth < SpillFile.MAX_DEPTH) {
+					// too big for memory: from now on both sides go to partition files.
+					builds = new SpillFile[SpillFile.PARTITIONS];
+					for (Object[] held : table.rows) {
+						spill(builds, held, buildKey, depth);
+					}
+					table = null;
+				}
+				if (builds != null)
+					spill(builds, row, buildKey, depth);
+				else
+					table.add(row, key(row, buildKey));
+			}
+
+			if (builds == null) {
+				while ((row = probe.next()) != null) {
+					table.probe(row, key(row, probeKey), builder);
+				}
+				table.finish(builder);
+				return;
+			}
+
+			probes = new SpillFile[SpillFile.PARTITIONS];
+			while ((row = probe.next()) != null) {
+				spill(probes, row, probeKey, depth);
+			}
+			for (int p = 0; p < SpillFile.PARTITIONS; p++) {
+				join(of(builds[p]), of(probes[p]), depth + 1, builder);
+				if (builds[p] != null)
+					builds[p].delete();
+				if (probes[p] != null)
+					probes[p].delete();
+				builds[p] = null;
+				probes[p] = null;
+			}
+		} finally {
+			delete(builds);
+			delete(probes);
+		}
+	}
+
+	private static void spill(SpillFile[] partitions, Object[] row, int column, int depth) throws IOException {
+		Object key = key(row, column);
+		int p = SpillFile.partition(key == null ? 0 : key.hashCode(), depth);
+		if (partitions[p] == null)
+			partitions[p] = new SpillFile(row.length);
+		partitions[p].write(row);
+	}
+
+	private static void delete(SpillFile[] partitions) {
+		if (partitions == null)
+			return;
+		for (SpillFile partition : partitions) {
+			if (partition != null)
+				partition.delete();
+		}
+	}
+
+	/**
+	 * Table: the rows of the build side, chained by key in arrival order.
+	 */
+	private class Table {
+		final List<Object[]> rows = new ArrayList<>();
+		final Map<Object, int[]> chains = new HashMap<>(); // key -> {first, last} row.
+		int[] next = new int[16]; // following row with the same key, -1 at the end.
+		final BitSet matched = new BitSet(); // build rows that found a partner, when they are the left side.
+
+		void add(Object[] row, Object key) {
+			int n = rows.size();
+			rows.add(row);
+			if (n == next.length)
+				next = Arrays.copyOf(next, LocalCursor.Column.grow(n));
+			next[n] = -1;
+			if (key == null)
+				return;
+			int[] chain = chains.get(key);
+			if (chain == null) {
+				chains.put(key, new int[] {n, n});
+			} else {
+				next[chain[1]] = n;
+				chain[1] = n;
+			}
+		}
+
+		void probe(Object[] row, Object key, LocalCursor.Builder builder) {
+			int[] chain = key == null ? null : chains.get(key);
+			if (buildLeft) {
+				// the left rows are in the table: collect their partners.
+				for (int m = chain == null ? -1 : chain[0]; m >= 0; m = next[m]) {
+					matched.set(m);
+					if (type == INNER || type == LEFT)
+						builder.addRow(concat(rows.get(m), row));
+				}
+				return;
+			}
+			switch (type) {
+			case INNER: case LEFT:
+				for (int m = chain == null ? -1 : chain[0]; m >= 0; m = next[m]) {
+					builder.addRow(concat(row, rows.get(m)));
+				}
+				if (chain == null && type == LEFT)
+					builder.addRow(concat(row, null));
+				break;
+			case SEMI:
+				if (chain != null)
+					builder.addRow(row);
+				break;
+			case ANTI:
+				if (chain == null)
+					builder.addRow(row);
+				break;
+			}
+		}
+
+		// left rows kept in the table are written once every right row went by.
+		void finish(LocalCursor.Builder builder) {
+			if (!buildLeft || type == INNER)
+				return;
+			for (int m = 0; m < rows.size(); m++) {
+				boolean hit = matched.get(m);
+				if ((type == LEFT && !hit) || (type == ANTI && !hit))
+					builder.addRow(type == LEFT ? concat(rows.get(m), null) : rows.get(m));
+				else if (type == SEMI && hit)
+					builder.addRow(rows.get(m));
+			}
+		}
+	}
+
+	private Object[] concat(Object[] left, Object[] right) {
+		Object[] row = new Object[leftWidth + rightWidth];
+		System.arraycopy(left, 0, row, 0, leftWidth);
+		if (right != null)
+			System.arraycopy(right, 0, row, leftWidth, rightWidth);
+		return row;
+	}
+}
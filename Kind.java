@@ -55,6 +55,8 @@ public enum Kind {
     MODULE,
     ENDMODULE,
     ENDFOR, 
+    SCAN,
+    ENDSCAN,
     EXIT,
     LOOP,
 
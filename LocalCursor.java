@@ -0,0 +1,504 @@
+package core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LocalCursor: a cursor held in memory by FoxDream, stored by column.
+ * Numbers live in double[] vectors and strings are dictionary-encoded, so
+ * rows can be revisited with go(n) without touching the database again.
+ *
+ * Local cursors can be indexed (INDEX ON ... TAG), then navigated in index
+ * order (SET ORDER TO), searched with SEEK and limited to a key range with
+ * setrange(low, high).
+ */
+public class LocalCursor extends RuntimeCursor {
+	final Column[] data;
+	final int count;
+	int row = 0; // 0-based current row.
+	final Map<String, CursorIndex> indexes = new HashMap<>();
+	CursorIndex order; // controlling index, null for record order.
+	private int position; // position in `order`.
+	private int rangeStart;
+	private int rangeEnd;
+	boolean found;
+
+	public LocalCursor(Columns columns, Column[] data, int count) {
+		super(columns);
+		this.data = data;
+		this.count = count;
+		this.eof = count == 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Object(Cursor: %s rows)", count);
+	}
+
+	// a cursor over the same rows, with its own position and indexes.
+	LocalCursor copy() {
+		return new LocalCursor(columns, data, count);
+	}
+
+	// rough size of the rows in memory, for ResultCache.
+	long estimatedBytes() {
+		long bytes = 64;
+		for (Column column : data) {
+			bytes += column.estimatedBytes();
+		}
+		return bytes;
+	}
+
+	@Override
+	Object getValue(int index) {
+		if (eof)
+			throw new IllegalStateException("No current row, the cursor is at end of file.");
+		return data[index - 1].get(row);
+	}
+
+	@Override
+	boolean advance() {
+		if (order == null)
+			return ++row < count;
+		if (++position < rangeEnd) {
+			row = order.rows[position];
+			return true;
+		}
+		row = count;
+		return false;
+	}
+
+	@Override
+	boolean rewind() {
+		if (order == null) {
+			row = 0;
+			return count > 0;
+		}
+		position = rangeStart;
+		row = position < rangeEnd ? order.rows[position] : count;
+		return position < rangeEnd;
+	}
+
+	// the rows are already in memory.
+	@Override
+	void readAhead(int size) {
+	}
+
+	@Override
+	void release() {
+		// the data is owned by the garbage collector.
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		try {
+			return dispatch(interpreter, arguments);
+		} catch (IllegalArgumentException e) {
+			error(e.getMessage());
+			return null;
+		}
+	}
+
+	private Object dispatch(Interpreter interpreter, ArgValue[] arguments) {
+		switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+		case "go":
+			checkArgumentsArity(arguments, 1);
+			return go(toInt(arguments[0]));
+		case "skip":
+			return skip(arguments == null || arguments.length == 0 ? 1 : toInt(arguments[0]));
+		case "recno":
+			checkArgumentsArity(arguments, 0);
+			return (double)(row + 1);
+		case "reccount":
+			checkArgumentsArity(arguments, 0);
+			return (double)count;
+		case "index":
+			checkArgumentsArity(arguments, 2);
+			return index(toField(arguments[0]), toTag(arguments[1]));
+		case "seek":
+			if (arguments == null || arguments.length < 1 || arguments.length > 2)
+				error("Wrong number of parameters/arguments. Expected: 1 or 2.");
+			return seek(arguments[0].value, arguments.length == 2 ? toTag(arguments[1]) : null);
+		case "found":
+			checkArgumentsArity(arguments, 0);
+			return found;
+		case "setorder":
+			setOrder(arguments == null || arguments.length == 0 ? null : toTag(arguments[0]));
+			return true;
+		case "order":
+			checkArgumentsArity(arguments, 0);
+			return order == null ? "" : order.tag;
+		case "setrange":
+			if (arguments == null || arguments.length == 0)
+				return setRange(null, null, false);
+			checkArgumentsArity(arguments, 2);
+			return setRange(arguments[0].value, arguments[1].value, true);
+		default:
+			return super.call(interpreter, arguments);
+		}
+	}
+
+	// go(n): 1-based record number like VFP's GO n. Moving past the last row sets eof.
+	// With an order set, the following next() continues in index order from that record.
+	private Object go(int recno) {
+		if (recno < 1)
+			error(String.format("Record number %s is out of range.", recno));
+		row = Math.min(recno - 1, count);
+		eof = row >= count;
+		bof = false;
+		if (!eof && order != null)
+			position = order.positionOf(row);
+		return !eof;
+	}
+
+	// skip([n]): moves n records in the current order. Moving before the
+	// first one stays on it and sets bof, like VFP's SKIP -n.
+	private Object skip(int n) {
+		if (order == null) {
+			if (row + n >= 0)
+				return go(row + 1 + n);
+			row = 0;
+			eof = count == 0;
+			bof = true;
+			return false;
+		}
+		position = (eof ? rangeEnd : position) + n;
+		bof = position < rangeStart;
+		if (bof)
+			position = rangeStart;
+		eof = position >= rangeEnd;
+		row = eof ? count : order.rows[position];
+		return !eof && !bof;
+	}
+
+	// Adds an index tag built from one key per record and makes it the controlling order.
+	CursorIndex index(String tag, String expression, Object[] keys) {
+		CursorIndex index = new CursorIndex(tag, expression, keys);
+		indexes.put(tag, index);
+		setOrder(tag);
+		return index;
+	}
+
+	// index(field, tag): the method form of INDEX ON for a single field.
+	private Object index(String field, String tag) {
+		int column = columns.indexOf(field);
+		if (column == 0)
+			error(String.format("Field not found `%s`", field));
+		Object[] keys = new Object[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = data[column - 1].get(i);
+		}
+		index(tag, field, keys);
+		return true;
+	}
+
+	@Override
+	int recordCount() {
+		return count;
+	}
+
+	@Override
+	int rowIndex() {
+		return row;
+	}
+
+	@Override
+	boolean jumpTo(int row) {
+		if (order != null)
+			return false;
+		this.row = Math.min(row, count);
+		eof = this.row >= count;
+		return true;
+	}
+
+	@Override
+	String indexTag(String expression) {
+		for (CursorIndex index : indexes.values()) {
+			if (expression.equals(index.expression))
+				return index.tag;
+		}
+		return null;
+	}
+
+	@Override
+	BitSet indexScan(String tag, Category op, Object value) {
+		if (value == null)
+			return null;
+		try {
+			return indexes.get(tag).scan(op, value);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	// SET ORDER TO [tag]: no tag goes back to record order.
+	@Override
+	void setOrder(String tag) {
+		if (tag == null) {
+			order = null;
+		} else {
+			order = indexes.get(tag);
+			if (order == null)
+				throw new IllegalArgumentException(String.format("Index tag `%s` not found.", tag));
+			rangeStart = 0;
+			rangeEnd = order.size();
+		}
+		if (!eof && order != null)
+			position = order.positionOf(row);
+	}
+
+	/**
+	 * SEEK key [TAG tag]: moves to the first record whose key matches in
+	 * O(log n). A tag also becomes the controlling order. On a miss the
+	 * cursor is left at end of file and found() returns .f.
+	 * Throws IllegalArgumentException for unknown tags or mismatched key types.
+	 */
+	@Override
+	boolean seek(Object key, String tag) {
+		if (tag != null)
+			setOrder(tag);
+		if (order == null)
+			throw new IllegalArgumentException("No index order set, use SET ORDER TO or INDEX ON first.");
+		int pos = order.seek(key);
+		found = pos >= 0 && pos >= rangeStart && pos < rangeEnd;
+		if (found) {
+			position = pos;
+			row = order.rows[pos];
+		} else {
+			row = count;
+		}
+		eof = !found;
+		bof = false;
+		return found;
+	}
+
+	// setrange(low, high): next()/gotop() only visit keys between low and high.
+	private Object setRange(Object low, Object high, boolean limited) {
+		if (order == null)
+			throw new IllegalArgumentException("No index order set, use SET ORDER TO or INDEX ON first.");
+		rangeStart = limited ? order.lowerBound(low) : 0;
+		rangeEnd = limited ? order.upperBound(high) : order.size();
+		rangeEnd = Math.max(rangeStart, rangeEnd);
+		eof = !rewind();
+		return !eof;
+	}
+
+	private String toField(ArgValue arg) {
+		if (!(arg.value instanceof String))
+			error("Invalid argument type for this function, expecting field name.");
+		return ((String)arg.value).toLowerCase();
+	}
+
+	private String toTag(ArgValue arg) {
+		if (!(arg.value instanceof String))
+			error("Invalid argument type for this function, expecting tag name.");
+		return ((String)arg.value).toLowerCase();
+	}
+
+	private int toInt(ArgValue arg) {
+		if (!(arg.value instanceof Double))
+			error("Invalid argument type for this function, expecting integer.");
+		return ((Double)arg.value).intValue();
+	}
+
+	private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
+		int got = arguments == null ? 0 : arguments.length;
+		if (got != numberOfArgs) {
+			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, got));
+		}
+	}
+
+	/**
+	 * Builder: appends rows column by column while draining another cursor.
+	 */
+	static class Builder {
+		private final Columns columns;
+		private final Column[] data;
+		private int count = 0;
+
+		Builder(Columns columns) {
+			this.columns = columns;
+			this.data = new Column[columns.kinds.length];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = Column.of(columns.kinds[i]);
+			}
+		}
+
+		// copies the current row of `source`.
+		void addRow(RuntimeCursor source) throws SQLException {
+			for (int i = 0; i < data.length; i++) {
+				data[i].add(source.field(i + 1));
+			}
+			count++;
+		}
+
+		void addRow(Object[] values) {
+			for (int i = 0; i < data.length; i++) {
+				data[i].add(values[i]);
+			}
+			count++;
+		}
+
+		// appends the rows of a builder with the same columns.
+		void addAll(Builder other) {
+			for (int row = 0; row < other.count; row++) {
+				for (int i = 0; i < data.length; i++) {
+					data[i].add(other.data[i].get(row));
+				}
+			}
+			count += other.count;
+		}
+
+		LocalCursor build() {
+			return new LocalCursor(columns, data, count);
+		}
+	}
+
+	/**
+	 * Column: one growable column vector.
+	 */
+	abstract static class Column {
+		int size = 0;
+
+		abstract Object get(int row);
+
+		abstract void add(Object value);
+
+		abstract long estimatedBytes();
+
+		static Column of(int kind) {
+			switch (kind) {
+			case NUMBER: return new NumberColumn();
+			case STRING: return new StringColumn();
+			case BOOLEAN: return new BooleanColumn();
+			default: return new ObjectColumn();
+			}
+		}
+
+		static int grow(int length) {
+			return Math.max(16, length + (length >> 1));
+		}
+	}
+
+	static class NumberColumn extends Column {
+		double[] values = new double[16];
+		final BitSet nulls = new BitSet();
+
+		@Override
+		Object get(int row) {
+			return nulls.get(row) ? null : values[row];
+		}
+
+		// primitive access for operators working on whole columns.
+		double getDouble(int row) {
+			return values[row];
+		}
+
+		boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		@Override
+		long estimatedBytes() {
+			return 8L * values.length + nulls.size() / 8;
+		}
+
+		@Override
+		void add(Object value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(size));
+			if (value == null)
+				nulls.set(size);
+			else
+				values[size] = ((Number)value).doubleValue();
+			size++;
+		}
+	}
+
+	static class StringColumn extends Column {
+		int[] codes = new int[16]; // index in dictionary, -1 for null.
+		final List<String> dictionary = new ArrayList<>();
+		private final Map<String, Integer> lookup = new HashMap<>();
+
+		@Override
+		long estimatedBytes() {
+			long bytes = 4L * codes.length;
+			for (String text : dictionary) {
+				bytes += 88 + 2L * text.length(); // the string, its map entry and boxed code.
+			}
+			return bytes;
+		}
+
+		@Override
+		Object get(int row) {
+			int code = codes[row];
+			return code < 0 ? null : dictionary.get(code);
+		}
+
+		@Override
+		void add(Object value) {
+			if (size == codes.length)
+				codes = Arrays.copyOf(codes, grow(size));
+			if (value == null) {
+				codes[size++] = -1;
+				return;
+			}
+			String text = value.toString();
+			Integer code = lookup.get(text);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(text);
+				lookup.put(text, code);
+			}
+			codes[size++] = code;
+		}
+	}
+
+	static class BooleanColumn extends Column {
+		byte[] values = new byte[16]; // 0 false, 1 true, 2 null.
+
+		@Override
+		long estimatedBytes() {
+			return values.length;
+		}
+
+		@Override
+		Object get(int row) {
+			byte value = values[row];
+			return value == 2 ? null : value == 1;
+		}
+
+		@Override
+		void add(Object value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(size));
+			values[size++] = value == null ? 2 : (Boolean)value ? (byte)1 : (byte)0;
+		}
+	}
+
+	static class ObjectColumn extends Column {
+		Object[] values = new Object[16];
+
+		@Override
+		long estimatedBytes() {
+			return 40L * values.length; // a reference and a small object per value.
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		void add(Object value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(size));
+			values[size++] = value;
+		}
+	}
+}
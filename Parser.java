@@ -85,6 +85,9 @@ public class Parser {
 		if (match(Kind.FOR)) {
 			return forStatement();
 		}
+		if (match(Kind.SCAN)) {
+			return scanStatement();
+		}
 		if (match(Kind.LPAREN)) {
 			return multipleAssignment();
 		}
@@ -97,6 +100,19 @@ public class Parser {
 		if (match(Kind.DEFER)) {
 			return deferStatement();
 		}
+		// cursor commands use contextual words so `index`, `seek` or `set` still work as names.
+		if (checkWord("index") && checkNextWord("on")) {
+			return indexStatement();
+		}
+		if (checkWord("seek") && (peekNext().kind == Kind.IDENTIFIER || peekNext().category == Category.LITERAL)) {
+			return seekStatement();
+		}
+		if (checkWord("set") && checkNextWord("order")) {
+			return setOrderStatement();
+		}
+		if (checkWord("transaction") && peekNext().kind == Kind.IDENTIFIER) {
+			return transactionStatement();
+		}
 		
 		return expressionStatement();
 	}
@@ -408,6 +424,93 @@ public class Parser {
 		return new Stmt.For(token, identifier, initialValue, finalValue, increment, new Stmt.Block(token, statements));
 	}
 	
+	// scanStatement ::= 'SCAN' expression ('FOR' expression)? statements 'ENDSCAN'
+	private Stmt scanStatement() {
+		final Token token = previous();
+		final Expr cursor = expression();
+		Expr condition = null;
+		
+		if (match(Kind.FOR)) {
+			condition = expression();
+		}
+		
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		final List<Stmt> statements = new ArrayList<>();
+		while (!isAtEnd() && !match(Kind.ENDSCAN)) {
+			statements.add(declaration());
+		}
+		
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		return new Stmt.Scan(token, cursor, condition, new Stmt.Block(token, statements));
+	}
+	
+	// indexStatement ::= 'INDEX' 'ON' expression 'TAG' IDENTIFIER 'IN' expression
+	private Stmt indexStatement() {
+		final Token token = advance();
+		advance(); // ON
+		final Expr key = expression();
+		consumeWord("tag", "Expect 'TAG' after index expression.");
+		final Token tag = consume(Kind.IDENTIFIER, "Expect tag name.");
+		consumeWord("in", "Expect 'IN' cursor.");
+		final Expr cursor = expression();
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		return new Stmt.Index(token, key, tag, cursor);
+	}
+	
+	// seekStatement ::= 'SEEK' expression ('TAG' IDENTIFIER)? 'IN' expression
+	private Stmt seekStatement() {
+		final Token token = advance();
+		final Expr key = expression();
+		Token tag = null;
+		if (checkWord("tag")) {
+			advance();
+			tag = consume(Kind.IDENTIFIER, "Expect tag name.");
+		}
+		consumeWord("in", "Expect 'IN' cursor.");
+		final Expr cursor = expression();
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		return new Stmt.Seek(token, key, tag, cursor);
+	}
+	
+	// setOrderStatement ::= 'SET' 'ORDER' 'TO' ('TAG'? IDENTIFIER)? 'IN' expression
+	private Stmt setOrderStatement() {
+		final Token token = advance();
+		advance(); // ORDER
+		consume(Kind.TO, "Expect keyword 'TO'");
+		Token tag = null;
+		if (checkWord("tag")) {
+			advance();
+			tag = consume(Kind.IDENTIFIER, "Expect tag name.");
+		} else if (check(Kind.IDENTIFIER) && !checkWord("in")) {
+			tag = advance();
+		}
+		consumeWord("in", "Expect 'IN' cursor.");
+		final Expr cursor = expression();
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		return new Stmt.SetOrder(token, tag, cursor);
+	}
+	
+	// transactionStatement ::= 'TRANSACTION' expression statements 'ENDTRANSACTION'
+	private Stmt transactionStatement() {
+		final Token token = advance();
+		final Expr connection = expression();
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		final List<Stmt> statements = new ArrayList<>();
+		while (!isAtEnd() && !checkWord("endtransaction")) {
+			statements.add(declaration());
+		}
+		consumeWord("endtransaction", "Expect 'ENDTRANSACTION'.");
+		consume(Kind.SEMICOLON, "Expect new line.");
+		
+		return new Stmt.Transaction(token, connection, new Stmt.Block(token, statements));
+	}
+	
 	// functionStatement
 	private Stmt parseFunctionDeclaration() {
 		final Token token = previous();
@@ -788,12 +891,13 @@ public class Parser {
 	
 	private Expr createObject() {
 		final Token token = previous();
-		final List<Expr> arguments = new ArrayList<>();
+		final List<Expr.NamedExp> arguments = new ArrayList<>();
 		consume(Kind.LPAREN, "Expect '(' after 'CREATEOBJECT'");
 		final Token name = consume(Kind.STRING, "Expect object name.");
 		
+		// constructor options are named arguments e.g: createobject("array", size: 10)
 		while (!isAtEnd() && match(Kind.COMMA)) {
-			arguments.add(expression());
+			arguments.add(parseNamedExp(false));
 		}
 		consume(Kind.RPAREN, "Expect ')'");		
 		
@@ -823,6 +927,22 @@ public class Parser {
 		if (isAtEnd()) return false;
 		return peek().kind == k;
 	}
+	
+	// contextual keyword: an identifier spelled `word`.
+	private boolean checkWord(String word) {
+		return check(Kind.IDENTIFIER) && peek().lexeme.equalsIgnoreCase(word);
+	}
+	
+	private boolean checkNextWord(String word) {
+		final Token next = peekNext();
+		return next.kind == Kind.IDENTIFIER && next.lexeme.equalsIgnoreCase(word);
+	}
+	
+	private Token consumeWord(String word, String msg) {
+		if (checkWord(word)) return advance();
+		
+		throw error(peek(), msg);
+	}
 
 	// Get the next token and returns the previous one.
 	private Token advance() {
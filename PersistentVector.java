@@ -0,0 +1,312 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * PersistentVector: an immutable vector stored as a 32-way trie plus a tail.
+ * Updates copy only the path to the changed leaf, so every version shares
+ * most of its nodes with the previous one and can be read from any thread
+ * without locking.
+ *
+ * Transient builds the same structure in place for batch loading and is
+ * frozen again with persistent().
+ */
+public final class PersistentVector {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	/**
+	 * Edit: marks the nodes a transient is allowed to mutate in place.
+	 */
+	static final class Edit {
+		volatile boolean active;
+
+		Edit(boolean active) {
+			this.active = active;
+		}
+	}
+
+	static final class Node {
+		final Edit edit;
+		final Object[] array;
+
+		Node(Edit edit, Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+
+		Node(Edit edit) {
+			this(edit, new Object[WIDTH]);
+		}
+	}
+
+	private static final Edit NOEDIT = new Edit(false);
+	private static final Node EMPTY_NODE = new Node(NOEDIT);
+	static final PersistentVector EMPTY = new PersistentVector(0, BITS, EMPTY_NODE, new Object[0]);
+
+	final int count;
+	private final int shift;
+	private final Node root;
+	private final Object[] tail;
+
+	private PersistentVector(int count, int shift, Node root, Object[] tail) {
+		this.count = count;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+
+	private static int tailOffset(int count) {
+		return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+	}
+
+	private static Object[] arrayFor(int i, int count, int shift, Node root, Object[] tail) {
+		if (i < 0 || i >= count)
+			throw new IndexOutOfBoundsException(String.format("Index %s out of bounds for length %s", i, count));
+		if (i >= tailOffset(count))
+			return tail;
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Node)node.array[(i >>> level) & MASK];
+		}
+		return node.array;
+	}
+
+	private static Node newPath(Edit edit, int level, Node node) {
+		if (level == 0)
+			return node;
+		Node ret = new Node(edit);
+		ret.array[0] = newPath(edit, level - BITS, node);
+		return ret;
+	}
+
+	public Object get(int i) {
+		return arrayFor(i, count, shift, root, tail)[i & MASK];
+	}
+
+	public int indexOf(Object value) {
+		for (int i = 0; i < count; i += WIDTH) {
+			Object[] array = arrayFor(i, count, shift, root, tail);
+			int limit = Math.min(WIDTH, count - i);
+			for (int j = 0; j < limit; j++) {
+				if (Objects.equals(array[j], value))
+					return i + j;
+			}
+		}
+		return -1;
+	}
+
+	public PersistentVector set(int i, Object value) {
+		if (i == count)
+			return add(value);
+		if (i < 0 || i > count)
+			throw new IndexOutOfBoundsException(String.format("Index %s out of bounds for length %s", i, count));
+		if (i >= tailOffset(count)) {
+			Object[] newTail = tail.clone();
+			newTail[i & MASK] = value;
+			return new PersistentVector(count, shift, root, newTail);
+		}
+		return new PersistentVector(count, shift, doSet(shift, root, i, value), tail);
+	}
+
+	private static Node doSet(int level, Node node, int i, Object value) {
+		Node ret = new Node(node.edit, node.array.clone());
+		if (level == 0) {
+			ret.array[i & MASK] = value;
+		} else {
+			int subidx = (i >>> level) & MASK;
+			ret.array[subidx] = doSet(level - BITS, (Node)node.array[subidx], i, value);
+		}
+		return ret;
+	}
+
+	public PersistentVector add(Object value) {
+		// room in the tail?
+		if (count - tailOffset(count) < WIDTH) {
+			Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+			newTail[tail.length] = value;
+			return new PersistentVector(count + 1, shift, root, newTail);
+		}
+		// full tail, push it into the tree.
+		Node tailNode = new Node(root.edit, tail);
+		Node newRoot;
+		int newShift = shift;
+		if ((count >>> BITS) > (1 << shift)) { // root overflow
+			newRoot = new Node(root.edit);
+			newRoot.array[0] = root;
+			newRoot.array[1] = newPath(root.edit, shift, tailNode);
+			newShift += BITS;
+		} else {
+			newRoot = pushTail(shift, root, tailNode);
+		}
+		return new PersistentVector(count + 1, newShift, newRoot, new Object[] { value });
+	}
+
+	private Node pushTail(int level, Node parent, Node tailNode) {
+		int subidx = ((count - 1) >>> level) & MASK;
+		Node ret = new Node(parent.edit, parent.array.clone());
+		Node nodeToInsert;
+		if (level == BITS) {
+			nodeToInsert = tailNode;
+		} else {
+			Node child = (Node)parent.array[subidx];
+			nodeToInsert = child != null ? pushTail(level - BITS, child, tailNode) : newPath(root.edit, level - BITS, tailNode);
+		}
+		ret.array[subidx] = nodeToInsert;
+		return ret;
+	}
+
+	public PersistentVector pop() {
+		if (count == 0)
+			throw new IllegalStateException("Can't pop an empty vector.");
+		if (count == 1)
+			return EMPTY;
+		if (count - tailOffset(count) > 1) {
+			return new PersistentVector(count - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+		}
+		Object[] newTail = arrayFor(count - 2, count, shift, root, tail);
+		Node newRoot = popTail(shift, root);
+		int newShift = shift;
+		if (newRoot == null) {
+			newRoot = EMPTY_NODE;
+		}
+		if (shift > BITS && newRoot.array[1] == null) {
+			newRoot = (Node)newRoot.array[0];
+			newShift -= BITS;
+		}
+		return new PersistentVector(count - 1, newShift, newRoot, newTail);
+	}
+
+	private Node popTail(int level, Node node) {
+		int subidx = ((count - 2) >>> level) & MASK;
+		if (level > BITS) {
+			Node newChild = popTail(level - BITS, (Node)node.array[subidx]);
+			if (newChild == null && subidx == 0)
+				return null;
+			Node ret = new Node(root.edit, node.array.clone());
+			ret.array[subidx] = newChild;
+			return ret;
+		} else if (subidx == 0) {
+			return null;
+		}
+		Node ret = new Node(root.edit, node.array.clone());
+		ret.array[subidx] = null;
+		return ret;
+	}
+
+	public Transient asTransient() {
+		return new Transient(this);
+	}
+
+	/**
+	 * Transient: a single-owner, mutable builder over a PersistentVector.
+	 * Nodes created by this transient are updated in place; shared nodes are
+	 * copied the first time they are touched.
+	 */
+	static final class Transient {
+		private int count;
+		private int shift;
+		private Node root;
+		private Object[] tail;
+
+		Transient(PersistentVector v) {
+			this.count = v.count;
+			this.shift = v.shift;
+			this.root = new Node(new Edit(true), v.root.array.clone());
+			this.tail = Arrays.copyOf(v.tail, WIDTH);
+		}
+
+		int count() {
+			return count;
+		}
+
+		Object get(int i) {
+			ensureEditable();
+			return arrayFor(i, count, shift, root, tail)[i & MASK];
+		}
+
+		Transient add(Object value) {
+			ensureEditable();
+			if (count - tailOffset(count) < WIDTH) {
+				tail[count & MASK] = value;
+				++count;
+				return this;
+			}
+			Node tailNode = new Node(root.edit, tail);
+			tail = new Object[WIDTH];
+			tail[0] = value;
+			Node newRoot;
+			int newShift = shift;
+			if ((count >>> BITS) > (1 << shift)) {
+				newRoot = new Node(root.edit);
+				newRoot.array[0] = root;
+				newRoot.array[1] = newPath(root.edit, shift, tailNode);
+				newShift += BITS;
+			} else {
+				newRoot = pushTail(shift, root, tailNode);
+			}
+			root = newRoot;
+			shift = newShift;
+			++count;
+			return this;
+		}
+
+		private Node pushTail(int level, Node parent, Node tailNode) {
+			Node ret = ensureEditable(parent);
+			int subidx = ((count - 1) >>> level) & MASK;
+			Node nodeToInsert;
+			if (level == BITS) {
+				nodeToInsert = tailNode;
+			} else {
+				Node child = (Node)ret.array[subidx];
+				nodeToInsert = child != null ? pushTail(level - BITS, child, tailNode) : newPath(root.edit, level - BITS, tailNode);
+			}
+			ret.array[subidx] = nodeToInsert;
+			return ret;
+		}
+
+		Transient set(int i, Object value) {
+			ensureEditable();
+			if (i == count)
+				return add(value);
+			if (i < 0 || i > count)
+				throw new IndexOutOfBoundsException(String.format("Index %s out of bounds for length %s", i, count));
+			if (i >= tailOffset(count)) {
+				tail[i & MASK] = value;
+			} else {
+				root = doSet(shift, root, i, value);
+			}
+			return this;
+		}
+
+		private Node doSet(int level, Node node, int i, Object value) {
+			Node ret = ensureEditable(node);
+			if (level == 0) {
+				ret.array[i & MASK] = value;
+			} else {
+				int subidx = (i >>> level) & MASK;
+				ret.array[subidx] = doSet(level - BITS, (Node)ret.array[subidx], i, value);
+			}
+			return ret;
+		}
+
+		PersistentVector persistent() {
+			ensureEditable();
+			root.edit.active = false;
+			return new PersistentVector(count, shift, root, Arrays.copyOf(tail, count - tailOffset(count)));
+		}
+
+		private void ensureEditable() {
+			if (!root.edit.active)
+				throw new IllegalStateException("Transient used after persistent() call.");
+		}
+
+		private Node ensureEditable(Node node) {
+			if (node.edit == root.edit)
+				return node;
+			return new Node(root.edit, node.array.clone());
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package core;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Projection: finds the fields a function reads from the cursor of
+ * connection.open(), so open() only selects those columns.
+ *
+ * function rates()
+ *     local c = connection.open("currencies") // select code, rate from currencies
+ *     scan c
+ *         print(code, c.rate)
+ *     endscan
+ * endfunc
+ *
+ * Fields are `c.field` members and, inside SCAN c, bare identifiers. The
+ * cursor must be a local assigned once, and used only through fields and
+ * navigation methods. Passing it on, returning it, macros, or other
+ * methods like sort() or groupby() leave the projection alone. Names that
+ * are not columns are dropped by open(), so over-collecting is harmless.
+ */
+public class Projection {
+	// cursor methods that do not read fields by name.
+	private static final Set<String> NAVIGATION = Set.of("next", "eof", "gotop", "close", "go", "skip", "recno",
+			"reccount", "found", "seek", "setorder", "order", "setrange");
+
+	private final String name;
+	private final Set<String> fields = new LinkedHashSet<>();
+	private boolean escaped = false;
+	private int assignments = 0;
+	private int scans = 0; // depth of SCAN over the cursor.
+
+	private Projection(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Annotates the open() calls of every function in the program with the
+	 * fields read from their cursor (Expr.Member.inferredFields).
+	 */
+	static void analyze(List<Stmt> program) {
+		for (Stmt stmt : program) {
+			functions(stmt);
+		}
+	}
+
+	/**
+	 * The identifiers the condition and body of a SCAN may read as fields
+	 * of its cursor, or null when a macro or an unknown statement could
+	 * name any of them at run time.
+	 */
+	static Set<String> reads(Stmt.Scan scan) {
+		Projection usage = new Projection(""); // no variable holds the cursor here.
+		usage.scans = 1;
+		usage.visit(scan.condition);
+		usage.visit(scan.block);
+		return usage.escaped ? null : usage.fields;
+	}
+
+	// finds the functions and methods declared in `stmt`.
+	private static void functions(Stmt stmt) {
+		if (stmt instanceof Stmt.Function) {
+			Stmt.Function function = (Stmt.Function)stmt;
+			analyze(function);
+			for (Stmt inner : function.statements) {
+				functions(inner);
+			}
+		} else if (stmt instanceof Stmt.Class) {
+			for (Stmt.Function method : ((Stmt.Class)stmt).methods) {
+				functions(method);
+			}
+		} else if (stmt instanceof Stmt.Module) {
+			analyze(((Stmt.Module)stmt).statements);
+		} else if (stmt instanceof Stmt.Block) {
+			analyze(((Stmt.Block)stmt).statements);
+		}
+	}
+
+	private static void analyze(Stmt.Function function) {
+		for (Stmt stmt : function.statements) {
+			if (!(stmt instanceof Stmt.Var) || ((Stmt.Var)stmt).scope != Kind.LOCAL || ((Stmt.Var)stmt).isMultipleAssign)
+				continue;
+			for (Stmt.VarDecl decl : ((Stmt.Var)stmt).declarations) {
+				Expr.Member open = openCall(decl.initializer);
+				if (open == null)
+					continue;
+				Projection usage = new Projection(decl.name.token.lexeme.toLowerCase());
+				usage.visit(function);
+				if (!usage.escaped && usage.assignments == 1)
+					open.inferredFields = usage.fields.toArray(new String[0]);
+			}
+		}
+	}
+
+	// the callee of `<object>.open(...)` without fields:, or null.
+	private static Expr.Member openCall(Expr expr) {
+		if (!(expr instanceof Expr.Call) || !(((Expr.Call)expr).callee instanceof Expr.Member))
+			return null;
+		Expr.Member callee = (Expr.Member)((Expr.Call)expr).callee;
+		if (callee.computed || !callee.property.token.lexeme.equalsIgnoreCase("open"))
+			return null;
+		for (Expr.NamedExp argument : ((Expr.Call)expr).arguments) {
+			if (argument.alias.equalsIgnoreCase("fields"))
+				return null;
+		}
+		return callee;
+	}
+
+	private boolean isCursor(Expr expr) {
+		return expr instanceof Expr.Identifier && expr.token.lexeme.equalsIgnoreCase(name);
+	}
+
+	private void visit(Stmt.Function function) {
+		if (function.parameters != null) {
+			for (Expr.NamedExp parameter : function.parameters) {
+				if (parameter.token.lexeme.equalsIgnoreCase(name))
+					assignments++;
+				visit(parameter.value);
+			}
+		}
+		visit(function.statements);
+		if (function.deferList != null)
+			visit(function.deferList);
+	}
+
+	private void visit(List<? extends Stmt> statements) {
+		for (Stmt stmt : statements) {
+			visit(stmt);
+		}
+	}
+
+	private void visit(Stmt stmt) {
+		if (stmt == null || escaped)
+			return;
+		if (stmt instanceof Stmt.Var) {
+			Stmt.Var var = (Stmt.Var)stmt;
+			for (Stmt.VarDecl decl : var.declarations) {
+				if (isCursor(decl.name))
+					assignments++;
+				visit(decl.initializer);
+			}
+			visitAll(var.values);
+		} else if (stmt instanceof Stmt.SimpleAssignment) {
+			assign(((Stmt.SimpleAssignment)stmt).left, ((Stmt.SimpleAssignment)stmt).value);
+		} else if (stmt instanceof Stmt.ComplexAssignment) {
+			assign(((Stmt.ComplexAssignment)stmt).left, ((Stmt.ComplexAssignment)stmt).value);
+		} else if (stmt instanceof Stmt.MultipleAssignment) {
+			for (Expr left : ((Stmt.MultipleAssignment)stmt).leftElements) {
+				assign(left, null);
+			}
+			visitAll(((Stmt.MultipleAssignment)stmt).values);
+		} else if (stmt instanceof Stmt.Expression) {
+			visit(((Stmt.Expression)stmt).expression);
+		} else if (stmt instanceof Stmt.Print) {
+			visitAll(((Stmt.Print)stmt).expressionList);
+		} else if (stmt instanceof Stmt.Return) {
+			visitAll(((Stmt.Return)stmt).expressions);
+		} else if (stmt instanceof Stmt.Block) {
+			visit(((Stmt.Block)stmt).statements);
+		} else if (stmt instanceof Stmt.If) {
+			visit(((Stmt.If)stmt).condition);
+			visit(((Stmt.If)stmt).thenBranch);
+			visit(((Stmt.If)stmt).elseBranch);
+		} else if (stmt instanceof Stmt.DoCase) {
+			for (Stmt.Case branch : ((Stmt.DoCase)stmt).branches) {
+				visitAll(branch.conditions);
+				visit(branch.body);
+			}
+			visit(((Stmt.DoCase)stmt).otherwise);
+		} else if (stmt instanceof Stmt.DoWhile) {
+			visit(((Stmt.DoWhile)stmt).condition);
+			visit(((Stmt.DoWhile)stmt).block);
+		} else if (stmt instanceof Stmt.Do) {
+			visit(((Stmt.Do)stmt).condition);
+			visit(((Stmt.Do)stmt).block);
+		} else if (stmt instanceof Stmt.For) {
+			Stmt.For loop = (Stmt.For)stmt;
+			assign(loop.identifier, loop.initialValue);
+			visit(loop.finalValue);
+			visit(loop.increment);
+			visit(loop.block);
+		} else if (stmt instanceof Stmt.Function) {
+			visit((Stmt.Function)stmt); // a closure may read the cursor too.
+		} else if (stmt instanceof Stmt.Class) {
+			for (Stmt.MultipleAssignment property : ((Stmt.Class)stmt).properties) {
+				visit(property);
+			}
+			visit(((Stmt.Class)stmt).methods);
+		} else if (stmt instanceof Stmt.Const) {
+			visit(((Stmt.Const)stmt).value);
+		} else if (stmt instanceof Stmt.Module) {
+			visit(((Stmt.Module)stmt).statements);
+		} else if (stmt instanceof Stmt.Release) {
+			visitAll(((Stmt.Release)stmt).elements);
+		} else if (stmt instanceof Stmt.Defer) {
+			visit(((Stmt.Defer)stmt).statements);
+		} else if (stmt instanceof Stmt.Scan) {
+			Stmt.Scan scan = (Stmt.Scan)stmt;
+			boolean over = isCursor(scan.cursor);
+			if (!over)
+				visit(scan.cursor);
+			scans += over ? 1 : 0;
+			visit(scan.condition);
+			visit(scan.block);
+			scans -= over ? 1 : 0;
+		} else if (stmt instanceof Stmt.Index) {
+			visit(((Stmt.Index)stmt).key);
+			visitCursor(((Stmt.Index)stmt).cursor);
+		} else if (stmt instanceof Stmt.Seek) {
+			visit(((Stmt.Seek)stmt).key);
+			visitCursor(((Stmt.Seek)stmt).cursor);
+		} else if (stmt instanceof Stmt.SetOrder) {
+			visitCursor(((Stmt.SetOrder)stmt).cursor);
+		} else if (stmt instanceof Stmt.Transaction) {
+			visit(((Stmt.Transaction)stmt).connection);
+			visit(((Stmt.Transaction)stmt).block);
+		} else if (!(stmt instanceof Stmt.Exit) && !(stmt instanceof Stmt.Loop)) {
+			escaped = true; // a statement this analysis does not know.
+		}
+	}
+
+	// the IN clause of INDEX, SEEK and SET ORDER only moves the cursor.
+	private void visitCursor(Expr cursor) {
+		if (!isCursor(cursor))
+			visit(cursor);
+	}
+
+	private void assign(Expr left, Expr value) {
+		if (isCursor(left))
+			assignments++;
+		else
+			visit(left);
+		visit(value);
+	}
+
+	private void visitAll(List<Expr> expressions) {
+		if (expressions == null)
+			return;
+		for (Expr expr : expressions) {
+			visit(expr);
+		}
+	}
+
+	private void visit(Expr expr) {
+		visit(expr, false);
+	}
+
+	private void visit(Expr expr, boolean callee) {
+		if (expr == null || escaped)
+			return;
+		if (expr instanceof Expr.Identifier) {
+			String lexeme = expr.token.lexeme.toLowerCase();
+			if (lexeme.equals(name))
+				escaped = true; // the cursor itself is passed on.
+			else if (scans > 0)
+				fields.add(lexeme);
+		} else if (expr instanceof Expr.Member) {
+			Expr.Member member = (Expr.Member)expr;
+			if (!member.computed && isCursor(member.parentObject)) {
+				String property = member.property.token.lexeme.toLowerCase();
+				if (!callee)
+					fields.add(property);
+				else if (!NAVIGATION.contains(property))
+					escaped = true;
+				return;
+			}
+			visit(member.parentObject);
+			if (member.computed)
+				visit(member.property);
+		} else if (expr instanceof Expr.Call) {
+			visit(((Expr.Call)expr).callee, true);
+			for (Expr.NamedExp argument : ((Expr.Call)expr).arguments) {
+				visit(argument.value);
+			}
+		} else if (expr instanceof Expr.CreateObject) {
+			for (Expr.NamedExp argument : ((Expr.CreateObject)expr).arguments) {
+				visit(argument.value);
+			}
+		} else if (expr instanceof Expr.NamedExp) {
+			visit(((Expr.NamedExp)expr).value);
+		} else if (expr instanceof Expr.Logical) {
+			visit(((Expr.Logical)expr).left);
+			visit(((Expr.Logical)expr).right);
+		} else if (expr instanceof Expr.Binary) {
+			visit(((Expr.Binary)expr).left);
+			visit(((Expr.Binary)expr).right);
+		} else if (expr instanceof Expr.Unary) {
+			visit(((Expr.Unary)expr).right);
+		} else if (expr instanceof Expr.IfExpr) {
+			visit(((Expr.IfExpr)expr).condition);
+			visit(((Expr.IfExpr)expr).consequence);
+			visit(((Expr.IfExpr)expr).alternative);
+		} else if (!(expr instanceof Expr.Literal) && !(expr instanceof Expr.This)) {
+			escaped = true; // macros can name the cursor at run time.
+		}
+	}
+}
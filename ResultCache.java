@@ -0,0 +1,172 @@
+package core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * ResultCache: rows of read queries kept in memory for a while, for the
+ * reference data scripts read over and over (currencies, branches...).
+ *
+ * Entries are keyed by the SQL text, with its blanks normalized, and the
+ * parameter values. They expire after their TTL, and the least recently
+ * used ones are evicted once the cached rows pass `maxBytes` (estimated
+ * by LocalCursor.estimatedBytes()). Hits are served as new LocalCursors
+ * over the cached columns, so every caller gets its own position.
+ */
+public class ResultCache {
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long invalidations = 0;
+
+	/**
+	 * Entry: cached rows and when they expire.
+	 */
+	private static class Entry {
+		final String sql; // normalized, for invalidate().
+		final LocalCursor rows;
+		final long bytes;
+		final long expires; // System.nanoTime() deadline.
+
+		Entry(String sql, LocalCursor rows, long bytes, long expires) {
+			this.sql = sql;
+			this.rows = rows;
+			this.bytes = bytes;
+			this.expires = expires;
+		}
+	}
+
+	ResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	synchronized void resize(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	// the cache key of a statement and its arguments from `first` on.
+	static String key(String sql, ArgValue[] arguments, int first) {
+		StringBuilder key = new StringBuilder(normalize(sql));
+		for (int i = first; arguments != null && i < arguments.length; i++) {
+			Object value = arguments[i].value;
+			key.append('\u0000').append(arguments[i].alias).append('=');
+			// the type is part of the key: 1 and "1" bind differently.
+			key.append(value == null ? "N" : value.getClass().getSimpleName().charAt(0) + Interpreter.stringify(value));
+		}
+		return key.toString();
+	}
+
+	// collapses runs of blanks outside quotes, so layout changes share an entry.
+	static String normalize(String sql) {
+		StringBuilder out = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean blank = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote == 0 && Character.isWhitespace(c)) {
+				blank = out.length() > 0;
+				continue;
+			}
+			if (blank) {
+				out.append(' ');
+				blank = false;
+			}
+			if (quote == 0 && (c == '\'' || c == '"'))
+				quote = c;
+			else if (c == quote)
+				quote = 0;
+			out.append(c);
+		}
+		return out.toString();
+	}
+
+	// a cursor over the cached rows, or null on a miss.
+	synchronized LocalCursor get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expires - System.nanoTime() <= 0) {
+			remove(key, entry);
+			expirations++;
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.rows.copy();
+	}
+
+	// results bigger than the whole cache are not kept.
+	synchronized void put(String key, LocalCursor rows, long ttlMillis) {
+		long size = rows.estimatedBytes() + key.length() * 2L;
+		Entry old = entries.get(key);
+		if (old != null)
+			remove(key, old);
+		if (size > maxBytes)
+			return;
+		String sql = key.indexOf('\u0000') < 0 ? key : key.substring(0, key.indexOf('\u0000'));
+		entries.put(key, new Entry(sql.toLowerCase(), rows, size, System.nanoTime() + ttlMillis * 1_000_000L));
+		bytes += size;
+		evict();
+	}
+
+	/**
+	 * Drops every entry, or those whose SQL names `table`. Returns how many.
+	 */
+	synchronized int invalidate(String table) {
+		Pattern name = table == null ? null
+				: Pattern.compile("(?<![\\w.])" + Pattern.quote(table.trim().toLowerCase()) + "(?!\\w)");
+		int removed = 0;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next().getValue();
+			if (name == null || name.matcher(entry.sql).find()) {
+				it.remove();
+				bytes -= entry.bytes;
+				removed++;
+			}
+		}
+		invalidations += removed;
+		return removed;
+	}
+
+	private void remove(String key, Entry entry) {
+		entries.remove(key);
+		bytes -= entry.bytes;
+	}
+
+	// least recently used entries go first.
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			bytes -= entry.bytes;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Cache metrics as a script object.
+	 */
+	synchronized Environment stats() {
+		Environment stats = new Environment();
+		stats.define("entries", (double)entries.size(), VarType.CONSTANT);
+		stats.define("bytes", (double)bytes, VarType.CONSTANT);
+		stats.define("maxbytes", (double)maxBytes, VarType.CONSTANT);
+		stats.define("hits", (double)hits, VarType.CONSTANT);
+		stats.define("misses", (double)misses, VarType.CONSTANT);
+		stats.define("hitratio", hits + misses > 0 ? (double)hits / (hits + misses) : 0.0, VarType.CONSTANT);
+		stats.define("evictions", (double)evictions, VarType.CONSTANT);
+		stats.define("expirations", (double)expirations, VarType.CONSTANT);
+		stats.define("invalidations", (double)invalidations, VarType.CONSTANT);
+		return stats;
+	}
+}
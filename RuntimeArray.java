@@ -1,13 +1,129 @@
 package core;
 
 import java.util.List;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
 
 public class RuntimeArray implements CallableObject {
-	final List<Object> elements = new ArrayList<>();
+	List<Object> elements;
+	final String elementType; // null means the array accepts any value.
+	private boolean shared = false; // slices are reading our storage.
 	private static final String INVALID_ARGUMENT_NEED_INT = "Invalid argument type for this function, expecting integer.";
 	Expr callee;
 	
+	public RuntimeArray() {
+		this(new ArrayList<>(), null);
+	}
+	
+	public RuntimeArray(List<Object> elements, String elementType) {
+		this.elements = elements;
+		this.elementType = elementType;
+	}
+	
+	/**
+	 * Builds a new array from createobject("array", ...) arguments.
+	 * Positional arguments are the initial elements, named ones are options:
+	 *   size: number of elements, filled with `fill` (or the type default).
+	 *   capacity: storage to reserve without changing the length.
+	 *   type: "number" | "boolean" | "string" | "any".
+	 * The storage is allocated once; "number" and "boolean" use primitive arrays.
+	 */
+	public static RuntimeArray create(Token token, ArgValue[] arguments) {
+		int size = 0;
+		int capacity = 0;
+		String type = null;
+		Object fill = null;
+		boolean hasFill = false;
+		final List<Object> initial = new ArrayList<>();
+		
+		for (ArgValue arg : arguments) {
+			switch (arg.alias.toLowerCase()) {
+			case "_":
+				initial.add(arg.value);
+				break;
+			case "size":
+				size = toLength(arg);
+				break;
+			case "capacity":
+				capacity = toLength(arg);
+				break;
+			case "type":
+				type = arg.value == null ? "any" : arg.value.toString().toLowerCase();
+				switch (type) {
+				case "number": case "boolean": case "string": case "any":
+					break;
+				default:
+					throw new RuntimeError(arg.name, "Unknown array type: `" + type + "`");
+				}
+				break;
+			case "fill":
+				fill = arg.value;
+				hasFill = true;
+				break;
+			default:
+				throw new RuntimeError(arg.name, "Unknown array option: `" + arg.alias + "`");
+			}
+		}
+		
+		if (type != null && type.equals("any"))
+			type = null;
+		if (!hasFill)
+			fill = defaultValue(token, type);
+		
+		// positional values take the leading slots, the rest is filled.
+		int length = Math.max(size, initial.size());
+		capacity = Math.max(capacity, length);
+		
+		final List<Object> storage = newStorage(type, capacity);
+		RuntimeArray array = new RuntimeArray(storage, type);
+		
+		for (Object value : initial) {
+			array.checkType(token, value);
+			storage.add(value);
+		}
+		if (length > initial.size()) {
+			array.checkType(token, fill);
+			if (storage instanceof NumberList) {
+				((NumberList)storage).fill(length, (Double)fill);
+			} else if (storage instanceof BooleanList) {
+				((BooleanList)storage).fill(length, (Boolean)fill);
+			} else {
+				for (int i = initial.size(); i < length; i++) {
+					storage.add(fill);
+				}
+			}
+		}
+		return array;
+	}
+	
+	private static List<Object> newStorage(String type, int capacity) {
+		if ("number".equals(type)) {
+			return new NumberList(capacity);
+		} else if ("boolean".equals(type)) {
+			return new BooleanList(capacity);
+		}
+		return new ArrayList<>(capacity);
+	}
+	
+	private static int toLength(ArgValue arg) {
+		if (!(arg.value instanceof Double) || (Double)arg.value < 0)
+			throw new RuntimeError(arg.name, String.format("Invalid value for `%s`, expecting a positive integer.", arg.alias));
+		return ((Double)arg.value).intValue();
+	}
+	
+	private static Object defaultValue(Token token, String type) {
+		if (type == null) return null;
+		switch (type) {
+		case "number": return 0.0;
+		case "boolean": return false;
+		case "string": return "";
+		default:
+			throw new RuntimeError(token, "Unknown array type: `" + type + "`");
+		}
+	}
+	
 	@Override
 	public String toString() {
 		if (elements.size() > 0) {			
@@ -53,6 +169,16 @@ public class RuntimeArray implements CallableObject {
 			return indexOf(arguments);
 		case "set":
 			return set(arguments);
+		case "slice":
+			return slice(arguments, false);
+		case "view":
+			return slice(arguments, true);
+		case "reversed":
+			return reversed(arguments);
+		case "freeze":
+			if (arguments != null && arguments.length > 0)
+				error("Unexpected arguments.");
+			return RuntimeVector.of(elements);
 		default:
 			throw new RuntimeError(callee.token, "Function not defined for this data type.");			
 		}
@@ -66,11 +192,14 @@ public class RuntimeArray implements CallableObject {
 	
 	private Object addElement(ArgValue[] arguments) {
 		checkArgumentsArity(arguments, 1);
+		checkType(callee.token, arguments[0].value);
+		beforeWrite(true);
 		return elements.add(arguments[0].value);		
 	}
 	
 	private Object remove(ArgValue[] arguments) {
 		checkArgumentsArity(arguments, 1);		
+		beforeWrite(true);
 		return elements.remove(arguments[0].value);			
 	}
 
@@ -109,9 +238,98 @@ public class RuntimeArray implements CallableObject {
 		checkArgumentsArity(arguments, 2);
 		if (!(arguments[0].value instanceof Double))
 			error(INVALID_ARGUMENT_NEED_INT);
+		checkType(callee.token, arguments[1].value);
 		Double d = (Double)arguments[0].value;
 		int i = d.intValue();
-		return elements.set(i, arguments[1].value); 		
+		try {
+			beforeWrite(false);
+			return elements.set(i, arguments[1].value);
+		} catch(IndexOutOfBoundsException e) {
+			error(e.getMessage());
+		}
+		return null;
+	}
+	
+	// slice(from, to) and view(from, to): `to` is exclusive and defaults to len().
+	private Object slice(ArgValue[] arguments, boolean live) {
+		int size = elements.size();
+		if (arguments == null || arguments.length == 0 || arguments.length > 2)
+			error(String.format("Wrong number of parameters/arguments. Expected: 1 or 2, got: %s.", arguments == null ? 0 : arguments.length));
+		int from = toIndex(arguments[0]);
+		int to = arguments.length > 1 ? toIndex(arguments[1]) : size;
+		if (from > to || to > size)
+			error(String.format("Invalid range [%s, %s) for length %s.", from, to, size));
+		
+		if (live)
+			return new RuntimeArray(new Window(this, null, from, to - from, false), elementType);
+		return new RuntimeArray(snapshot(from, to - from, false), elementType);
+	}
+	
+	private Object reversed(ArgValue[] arguments) {
+		if (arguments != null && arguments.length > 0)
+			error("Unexpected arguments.");
+		return new RuntimeArray(snapshot(0, elements.size(), true), elementType);
+	}
+	
+	private int toIndex(ArgValue arg) {
+		if (!(arg.value instanceof Double) || (Double)arg.value < 0)
+			error(INVALID_ARGUMENT_NEED_INT);
+		return ((Double)arg.value).intValue();
+	}
+	
+	// Returns a read-only window over storage that will not change anymore:
+	// either a frozen window or our own storage, which we copy before the next write.
+	private Window snapshot(int from, int length, boolean reversed) {
+		if (elements instanceof Window) {
+			Window w = (Window)elements;
+			if (w.owner != null) // views hold no storage of their own.
+				return w.owner.snapshot(w.offset + from, length, reversed);
+			if (w.reversed)
+				return new Window(null, w.source, w.offset + w.length - from - length, length, !reversed);
+			return new Window(null, w.source, w.offset + from, length, reversed);
+		}
+		shared = true;
+		return new Window(null, elements, from, length, reversed);
+	}
+	
+	// Copy-on-write: detach from any storage we share before mutating it.
+	// Views write through to their owner unless the change is structural.
+	private void beforeWrite(boolean structural) {
+		if (elements instanceof Window) {
+			if (((Window)elements).owner == null || structural) {
+				elements = copyOf(elements);
+			}
+		} else if (shared) {
+			elements = copyOf(elements);
+			shared = false;
+		}
+	}
+	
+	private List<Object> copyOf(List<Object> source) {
+		List<Object> storage = newStorage(elementType, source.size());
+		storage.addAll(source);
+		return storage;
+	}
+	
+	private void checkType(Token token, Object value) {
+		if (elementType == null) return;
+		boolean valid;
+		switch (elementType) {
+		case "number":
+			valid = value instanceof Double;
+			break;
+		case "boolean":
+			valid = value instanceof Boolean;
+			break;
+		case "string":
+			valid = value == null || value instanceof String;
+			break;
+		default:
+			throw new RuntimeError(token, "Unknown array type: `" + elementType + "`");
+		}
+		if (!valid)
+			throw new RuntimeError(token, String.format("Wrong element type, expected: %s, got: %s", elementType, 
+					value == null ? "null" : value.getClass().getSimpleName()));
 	}
 	
 	private void error(String msg) {
@@ -120,7 +338,186 @@ public class RuntimeArray implements CallableObject {
 	
 	private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
 		if (arguments == null || arguments.length != numberOfArgs) {
-			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, arguments.length));			
+			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, arguments == null ? 0 : arguments.length));			
 		}		
 	}
+	
+	/**
+	 * Window: a fixed-length range over another array's storage.
+	 * Views (owner != null) read and write the owner's current storage,
+	 * slices read a frozen `source` list and are never written.
+	 */
+	static class Window extends AbstractList<Object> implements RandomAccess {
+		final RuntimeArray owner;
+		final List<Object> source;
+		final int offset;
+		final int length;
+		final boolean reversed;
+		
+		public Window(RuntimeArray owner, List<Object> source, int offset, int length, boolean reversed) {
+			this.owner = owner;
+			this.source = source;
+			this.offset = offset;
+			this.length = length;
+			this.reversed = reversed;
+		}
+		
+		private int position(int index) {
+			checkIndex(index, size());
+			return reversed ? offset + length - 1 - index : offset + index;
+		}
+		
+		@Override
+		public Object get(int index) {
+			int i = position(index);
+			return owner != null ? owner.elements.get(i) : source.get(i);
+		}
+		
+		@Override
+		public Object set(int index, Object value) {
+			if (owner == null)
+				throw new UnsupportedOperationException();
+			int i = position(index);
+			owner.beforeWrite(false);
+			return owner.elements.set(i, value);
+		}
+		
+		@Override
+		public int size() {
+			if (owner != null) // the owner may have shrunk since the view was taken.
+				return Math.max(0, Math.min(length, owner.elements.size() - offset));
+			return length;
+		}
+	}
+
+	/**
+	 * NumberList: a growable list of doubles backed by a primitive array.
+	 */
+	static class NumberList extends AbstractList<Object> implements RandomAccess {
+		private double[] data;
+		private int size = 0;
+		
+		public NumberList(int capacity) {
+			data = new double[Math.max(capacity, 10)];
+		}
+		
+		void fill(int length, double value) {
+			ensureCapacity(length);
+			Arrays.fill(data, size, length, value);
+			size = length;
+		}
+		
+		@Override
+		public Object get(int index) {
+			checkIndex(index, size);
+			return data[index];
+		}
+		
+		@Override
+		public Object set(int index, Object value) {
+			checkIndex(index, size);
+			double old = data[index];
+			data[index] = (Double)value;
+			return old;
+		}
+		
+		@Override
+		public void add(int index, Object value) {
+			checkIndex(index, size + 1);
+			ensureCapacity(size + 1);
+			System.arraycopy(data, index, data, index + 1, size - index);
+			data[index] = (Double)value;
+			size++;
+			modCount++;
+		}
+		
+		@Override
+		public Object remove(int index) {
+			checkIndex(index, size);
+			double old = data[index];
+			System.arraycopy(data, index + 1, data, index, size - index - 1);
+			size--;
+			modCount++;
+			return old;
+		}
+		
+		@Override
+		public int size() {
+			return size;
+		}
+		
+		private void ensureCapacity(int minCapacity) {
+			if (minCapacity > data.length) {
+				data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+			}
+		}
+	}
+	
+	/**
+	 * BooleanList: a growable list of booleans backed by a primitive array.
+	 */
+	static class BooleanList extends AbstractList<Object> implements RandomAccess {
+		private boolean[] data;
+		private int size = 0;
+		
+		public BooleanList(int capacity) {
+			data = new boolean[Math.max(capacity, 10)];
+		}
+		
+		void fill(int length, boolean value) {
+			ensureCapacity(length);
+			Arrays.fill(data, size, length, value);
+			size = length;
+		}
+		
+		@Override
+		public Object get(int index) {
+			checkIndex(index, size);
+			return data[index];
+		}
+		
+		@Override
+		public Object set(int index, Object value) {
+			checkIndex(index, size);
+			boolean old = data[index];
+			data[index] = (Boolean)value;
+			return old;
+		}
+		
+		@Override
+		public void add(int index, Object value) {
+			checkIndex(index, size + 1);
+			ensureCapacity(size + 1);
+			System.arraycopy(data, index, data, index + 1, size - index);
+			data[index] = (Boolean)value;
+			size++;
+			modCount++;
+		}
+		
+		@Override
+		public Object remove(int index) {
+			checkIndex(index, size);
+			boolean old = data[index];
+			System.arraycopy(data, index + 1, data, index, size - index - 1);
+			size--;
+			modCount++;
+			return old;
+		}
+		
+		@Override
+		public int size() {
+			return size;
+		}
+		
+		private void ensureCapacity(int minCapacity) {
+			if (minCapacity > data.length) {
+				data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+			}
+		}
+	}
+	
+	private static void checkIndex(int index, int length) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException(String.format("Index %s out of bounds for length %s", index, length));
+	}
 }
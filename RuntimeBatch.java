@@ -0,0 +1,165 @@
+package core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * RuntimeBatch: buffers rows for one INSERT/UPDATE statement and sends
+ * them with addBatch/executeBatch every `size` rows.
+ *
+ * local b = connection.batch("insert into t values(?, ?)", size: 500, transaction: .t.)
+ * b.add(1, "foo")
+ * b.close()
+ *
+ * With transaction: .t. all rows are committed by close() and rolled back
+ * if any flush fails. Otherwise, under group commit, the rows sent count
+ * toward connection.groupcommit like executed statements.
+ */
+public class RuntimeBatch implements CallableObject {
+	final PreparedStatement statement;
+	private final RuntimeConnection.CallableConnection owner;
+	private final Connection connection;
+	private final StatementCache.Parsed parsed;
+	private final int size;
+	private final boolean transaction;
+	private boolean previousAutoCommit;
+	private boolean closed = false;
+	private int pending = 0;
+	private long rows = 0;
+	private long batches = 0;
+	private final long started;
+	Expr callee;
+
+	public RuntimeBatch(RuntimeConnection.CallableConnection owner, String sql, int size, boolean transaction) throws SQLException {
+		this.owner = owner;
+		this.connection = owner.connection;
+		this.parsed = StatementCache.parse(sql);
+		this.statement = connection.prepareStatement(parsed.sql);
+		this.size = size;
+		// inside an open transaction the rows are part of it.
+		this.transaction = transaction && connection.getAutoCommit();
+		if (this.transaction) {
+			previousAutoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+		}
+		this.started = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Object(Batch: %s rows)", rows + pending);
+	}
+
+	@Override
+	public int arity() {
+		return 0;
+	}
+
+	@Override
+	public void setCallee(Expr callee) {
+		this.callee = callee;
+	}
+
+	@Override
+	public String[] getParamInfo() {
+		return null;
+	}
+
+	@Override
+	public boolean validateArguments() {
+		return false;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		try {
+			switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+			case "add":
+				checkOpen();
+				StatementCache.bind(statement, parsed, arguments, 0);
+				statement.addBatch();
+				if (++pending >= size) {
+					flush();
+				}
+				return true;
+			case "flush":
+				checkOpen();
+				return (double)flush();
+			case "close":
+				return close();
+			case "stats":
+				return stats();
+			default:
+				throw new RuntimeError(callee.token, "Function not defined for this data type.");
+			}
+		} catch (SQLException e) {
+			abort();
+			error(e.getMessage());
+		}
+		return null;
+	}
+
+	// Sends the buffered rows, returns how many were sent.
+	private int flush() throws SQLException {
+		if (pending == 0)
+			return 0;
+		statement.executeBatch();
+		int sent = pending;
+		rows += pending;
+		batches++;
+		pending = 0;
+		if (!transaction)
+			owner.written(sent); // group commit decides when they are committed.
+		return sent;
+	}
+
+	private Object close() throws SQLException {
+		if (closed)
+			return false;
+		flush();
+		if (transaction) {
+			connection.commit();
+			connection.setAutoCommit(previousAutoCommit);
+		}
+		closed = true;
+		statement.close();
+		return true;
+	}
+
+	// On failure the whole transaction is undone and the batch is unusable.
+	private void abort() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			statement.close();
+			if (transaction) {
+				connection.rollback();
+				connection.setAutoCommit(previousAutoCommit);
+			}
+		} catch (SQLException e) {
+			// report the original error.
+		}
+	}
+
+	private Environment stats() {
+		double seconds = (System.nanoTime() - started) / 1e9;
+		Environment stats = new Environment();
+		stats.define("rows", (double)rows, VarType.CONSTANT);
+		stats.define("pending", (double)pending, VarType.CONSTANT);
+		stats.define("batches", (double)batches, VarType.CONSTANT);
+		stats.define("seconds", seconds, VarType.CONSTANT);
+		stats.define("rowspersecond", seconds > 0 ? rows / seconds : 0.0, VarType.CONSTANT);
+		return stats;
+	}
+
+	private void checkOpen() {
+		if (closed)
+			error("The batch is closed.");
+	}
+
+	private void error(String msg) {
+		throw new RuntimeError(callee.token, msg);
+	}
+}
@@ -0,0 +1,248 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RuntimeBigArray: a fixed-size numeric array stored off the GC heap.
+ * The storage is split in chunks of direct (or memory-mapped) buffers so
+ * the array can hold more than 2^31 elements.
+ *
+ * createobject("bigarray", size, "double")
+ * createobject("bigarray", size, "int", file: "data.bin")
+ *
+ * "byte" elements are unsigned, 0 to 255.
+ */
+public class RuntimeBigArray implements CallableObject {
+	private static final int CHUNK_BYTES_SHIFT = 30; // 1GB per chunk.
+	private static final String INVALID_ARGUMENT_NEED_INT = "Invalid argument type for this function, expecting integer.";
+
+	final long length;
+	final String elementType;
+	private final int widthShift; // log2 of the element width in bytes.
+	private final int chunkShift; // log2 of the elements per chunk.
+	private final long chunkMask;
+	private final ByteBuffer[] chunks;
+	Expr callee;
+
+	public RuntimeBigArray() {
+		this(0, "double", null);
+	}
+
+	public RuntimeBigArray(long length, String elementType, FileChannel channel) {
+		this.length = length;
+		this.elementType = elementType;
+		this.widthShift = widthShift(elementType);
+		this.chunkShift = CHUNK_BYTES_SHIFT - widthShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+
+		int count = (int)((length + chunkMask) >>> chunkShift);
+		this.chunks = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long elements = Math.min(1L << chunkShift, length - ((long)i << chunkShift));
+			int bytes = (int)(elements << widthShift);
+			try {
+				if (channel != null) {
+					long position = (long)i << CHUNK_BYTES_SHIFT;
+					chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+				} else {
+					chunks[i] = ByteBuffer.allocateDirect(bytes);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Builds a new big array from createobject("bigarray", size, type, file: path).
+	 * When `file` is given the storage is memory-mapped and the size defaults
+	 * to the number of elements already in the file.
+	 */
+	public static RuntimeBigArray create(Token token, ArgValue[] arguments) {
+		Object size = null;
+		String type = "double";
+		String file = null;
+		int position = 0;
+
+		for (ArgValue arg : arguments) {
+			String alias = arg.alias.toLowerCase();
+			if (alias.equals("_")) {
+				alias = position == 0 ? "size" : "type";
+				position++;
+			}
+			switch (alias) {
+			case "size":
+				size = arg.value;
+				break;
+			case "type":
+				type = arg.value == null ? "" : arg.value.toString().toLowerCase();
+				break;
+			case "file":
+				file = arg.value == null ? null : arg.value.toString();
+				break;
+			default:
+				throw new RuntimeError(arg.name, "Unknown bigarray option: `" + arg.alias + "`");
+			}
+		}
+
+		if (widthShift(type) < 0)
+			throw new RuntimeError(token, "Unknown bigarray type: `" + type + "`");
+		if (size != null && (!(size instanceof Double) || (Double)size < 0))
+			throw new RuntimeError(token, "Invalid bigarray size, expecting a positive integer.");
+		if (size == null && file == null)
+			throw new RuntimeError(token, "Missing bigarray size.");
+
+		if (file == null)
+			return new RuntimeBigArray(((Double)size).longValue(), type, null);
+
+		Path path = Paths.get(file);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long length = size != null ? ((Double)size).longValue() : channel.size() >>> widthShift(type);
+			// the mapping stays valid after the channel is closed.
+			return new RuntimeBigArray(length, type, channel);
+		} catch (IOException | IllegalStateException e) {
+			throw new RuntimeError(token, e.getMessage());
+		}
+	}
+
+	private static int widthShift(String type) {
+		switch (type) {
+		case "byte": return 0;
+		case "int": case "float": return 2;
+		case "long": case "double": return 3;
+		default: return -1;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BigArray(%s x %s)", length, elementType);
+	}
+
+	@Override
+	public int arity() {
+		return 0;
+	}
+
+	@Override
+	public void setCallee(Expr callee) {
+		this.callee = callee;
+	}
+
+	@Override
+	public String[] getParamInfo() {
+		return null;
+	}
+
+	@Override
+	public boolean validateArguments() {
+		return false;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+		case "get":
+			checkArgumentsArity(arguments, 1);
+			return getValue(toIndex(arguments[0]));
+		case "set":
+			checkArgumentsArity(arguments, 2);
+			if (!(arguments[1].value instanceof Double))
+				error("Invalid argument type for this function, expecting number.");
+			if (elementType.equals("byte") && !isByte((Double)arguments[1].value))
+				error(String.format("Value %s out of range for a byte array, expecting 0 to 255.", Interpreter.stringify(arguments[1].value)));
+			setValue(toIndex(arguments[0]), (Double)arguments[1].value);
+			return true;
+		case "len":
+			if (arguments != null && arguments.length > 0)
+				error("Unexpected arguments.");
+			return (double)length;
+		case "sum":
+			if (arguments != null && arguments.length > 0)
+				error("Unexpected arguments.");
+			return sum();
+		default:
+			throw new RuntimeError(callee.token, "Function not defined for this data type.");
+		}
+	}
+
+	double getValue(long index) {
+		ByteBuffer chunk = chunks[(int)(index >>> chunkShift)];
+		int offset = (int)((index & chunkMask) << widthShift);
+		switch (elementType) {
+		case "byte": return chunk.get(offset) & 0xFF;
+		case "int": return chunk.getInt(offset);
+		case "float": return chunk.getFloat(offset);
+		case "long": return chunk.getLong(offset);
+		default: return chunk.getDouble(offset);
+		}
+	}
+
+	void setValue(long index, double value) {
+		ByteBuffer chunk = chunks[(int)(index >>> chunkShift)];
+		int offset = (int)((index & chunkMask) << widthShift);
+		switch (elementType) {
+		case "byte": chunk.put(offset, (byte)value); break;
+		case "int": chunk.putInt(offset, (int)value); break;
+		case "float": chunk.putFloat(offset, (float)value); break;
+		case "long": chunk.putLong(offset, (long)value); break;
+		default: chunk.putDouble(offset, value); break;
+		}
+	}
+
+	// sums chunk by chunk so the type switch stays out of the inner loop.
+	double sum() {
+		double total = 0;
+		for (ByteBuffer chunk : chunks) {
+			int limit = chunk.capacity();
+			switch (elementType) {
+			case "byte":
+				for (int i = 0; i < limit; i++) total += chunk.get(i) & 0xFF;
+				break;
+			case "int":
+				for (int i = 0; i < limit; i += 4) total += chunk.getInt(i);
+				break;
+			case "float":
+				for (int i = 0; i < limit; i += 4) total += chunk.getFloat(i);
+				break;
+			case "long":
+				for (int i = 0; i < limit; i += 8) total += chunk.getLong(i);
+				break;
+			default:
+				for (int i = 0; i < limit; i += 8) total += chunk.getDouble(i);
+				break;
+			}
+		}
+		return total;
+	}
+
+	private static boolean isByte(double value) {
+		return value >= 0 && value <= 255 && value == Math.rint(value);
+	}
+
+	private long toIndex(ArgValue arg) {
+		if (!(arg.value instanceof Double))
+			error(INVALID_ARGUMENT_NEED_INT);
+		long index = ((Double)arg.value).longValue();
+		if (index < 0 || index >= length)
+			error(String.format("Index %s out of bounds for length %s", index, length));
+		return index;
+	}
+
+	private void error(String msg) {
+		throw new RuntimeError(callee.token, msg);
+	}
+
+	private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
+		if (arguments == null || arguments.length != numberOfArgs) {
+			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, arguments == null ? 0 : arguments.length));
+		}
+	}
+}
@@ -3,35 +3,90 @@ package core;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
 
 public class RuntimeConnection extends Environment {
 	public RuntimeConnection() {
 		super();
 		// Define properties
-		define("provider", "", VarType.VARIABLE);
+		define("provider", "", VarType.VARIABLE); // _MYSQL, _MSSQL, _H2, _SQLITE, a name or a jdbc: URL, see DatabaseProvider.
 		define("server", "", VarType.VARIABLE);
 		define("database", "", VarType.VARIABLE);
 		define("user", "", VarType.VARIABLE);
 		define("password", "", VarType.VARIABLE);
 		define("port", "", VarType.VARIABLE);
+		// Pool settings: disconnect() hands the connection back to the pool.
+		define("pooling", true, VarType.VARIABLE);
+		define("minpoolsize", 0.0, VarType.VARIABLE);
+		define("maxpoolsize", 10.0, VarType.VARIABLE);
+		define("idletimeout", 300.0, VarType.VARIABLE); // seconds
+		define("connecttimeout", 30.0, VarType.VARIABLE); // seconds waiting for a free pooled connection
+		define("statementcachesize", 32.0, VarType.VARIABLE); // prepared statements kept per connection
+		// Cursor options: rows fetched per round-trip (0 = driver default) and result set type.
+		define("fetchsize", 0.0, VarType.VARIABLE);
+		define("forwardonly", true, VarType.VARIABLE);
+		define("readonly", true, VarType.VARIABLE);
+		// Result cache: open(), query() and fetch() rows kept for `resultcachettl` seconds, or per call with ttl: n.
+		define("resultcache", false, VarType.VARIABLE);
+		define("resultcachesize", 64.0, VarType.VARIABLE); // MB
+		define("resultcachettl", 300.0, VarType.VARIABLE); // seconds
+		// Group commit: outside begin()/commit(), execute() commits every `groupcommit` statements
+		// or once the oldest uncommitted one is `groupcommitms` old (0 = no limit), instead of each one.
+		define("groupcommit", 0.0, VarType.VARIABLE);
+		define("groupcommitms", 0.0, VarType.VARIABLE);
 		CallableConnection cc = new CallableConnection(this);
+		callable = cc;
 		// Define methods
 		define("connect", cc, VarType.CONSTANT);
 		define("disconnect", cc, VarType.CONSTANT);
 		define("open", cc, VarType.CONSTANT);		
+		define("query", cc, VarType.CONSTANT);
+		define("execute", cc, VarType.CONSTANT);
+		define("batch", cc, VarType.CONSTANT);
+		define("fetch", cc, VarType.CONSTANT);
+		define("queryasync", cc, VarType.CONSTANT);
+		define("poolstats", cc, VarType.CONSTANT);
+		define("invalidate", cc, VarType.CONSTANT);
+		define("cachestats", cc, VarType.CONSTANT);
+		define("begin", cc, VarType.CONSTANT);
+		define("commit", cc, VarType.CONSTANT);
+		define("rollback", cc, VarType.CONSTANT);
 	}
+	
+	final CallableConnection callable; // for the TRANSACTION statement.
+
 	@Override
 	public String toString() {
 		return "Object(Connection)";
 	}
 	
 	static class CallableConnection implements CallableObject {
+		private static final Pattern FIELD_LIST = Pattern.compile("\\s*[A-Za-z_][\\w$]*(\\s*,\\s*[A-Za-z_][\\w$]*)*\\s*");
 		Expr callee;
 		Environment parent;
 		Connection connection = null;
-		Statement statement = null;
+		ConnectionPool pool = null; // the pool `connection` was borrowed from.
+		final List<Statement> statements = new ArrayList<>();
+		StatementCache statementCache = null;
+		ResultCache resultCache = null; // created on first use.
+		final Map<String, String[]> tableColumns = new HashMap<>(); // for inferred projections.
+		boolean inTransaction = false; // between begin() and commit()/rollback().
+		boolean inBlock = false; // the transaction belongs to a TRANSACTION statement.
+		private boolean grouping = false; // autocommit is off for group commit.
+		private int groupPending = 0;
+		private long groupStarted; // System.nanoTime() of the oldest uncommitted statement.
+		// where connect() connected, for the connections of background queries.
+		DatabaseProvider provider;
+		String url;
+		Properties info;
 		
 		@Override
 		public int arity() {
@@ -69,6 +124,30 @@ public class RuntimeConnection extends Environment {
 				return disconnect();
 			case "open":
 				return open(arguments);
+			case "query":
+				return query(arguments);
+			case "execute":
+				return execute(arguments);
+			case "batch":
+				return batch(arguments);
+			case "fetch":
+				return fetch(arguments);
+			case "queryasync":
+				return queryAsync(arguments);
+			case "poolstats":
+				return poolStats();
+			case "invalidate":
+				return invalidate(arguments);
+			case "begin":
+			case "commit":
+			case "rollback":
+				if (arguments != null && arguments.length > 0)
+					error(String.format("%s() takes no arguments.", ((Expr.Member)callee).property.token.lexeme));
+				return transaction(((Expr.Member)callee).property.token.lexeme.toLowerCase());
+			case "cachestats":
+				if (arguments != null && arguments.length > 0)
+					error("cachestats() takes no arguments.");
+				return resultCache().stats();
 			default:
 				throw new RuntimeError(callee.token, "Function not defined for this data type.");			
 			}
@@ -83,23 +162,49 @@ public class RuntimeConnection extends Environment {
 				error(e.getMessage());
 			}
 			
-			String provider = lookUp("provider").toString();
 			String server = lookUp("server").toString();
 			String user = lookUp("user").toString();
 			String password = lookUp("password").toString();
 			String database = lookUp("database").toString();
 			String port = lookUp("port").toString();
 			
-			String url = String.format("jdbc:mysql://%s:%s/%s", server, port, database);
 			try {
-				connection = DriverManager.getConnection(url, user, password);
+				provider = DatabaseProvider.of(lookUp("provider"));
+			} catch (IllegalArgumentException e) {
+				error(e.getMessage());
+			}
+			String url = provider.url(server, port, database);
+			Properties info = new Properties();
+			info.put("user", user);
+			info.put("password", password);
+			provider.configure(info);
+			this.url = url;
+			this.info = info;
+			try {
+				if (Boolean.TRUE.equals(lookUp("pooling"))) {
+					String key = String.join("|", provider.name(), server, port, database, user);
+					pool = ConnectionPool.get(key, url, info, 
+							toInt("minpoolsize"), toInt("maxpoolsize"), 
+							toInt("idletimeout") * 1000L, toInt("connecttimeout") * 1000L);
+					connection = pool.borrow();
+				} else {
+					pool = null;
+					connection = DriverManager.getConnection(url, info);
+				}
+				statementCache = new StatementCache(connection, toInt("statementcachesize"));
 				return true;
 			} catch (Exception e) {
 				throw new RuntimeError(callee.token, e.getMessage());
 			}
 		}
 		
-		private Object open(ArgValue[] arguments) {
+		private Object poolStats() {
+			if (pool == null)
+				error("The connection object is not using a pool.");
+			return pool.stats();
+		}
+		
+		private void checkConnected() {
 			try {
 				if (connection == null || connection.isClosed()) {
 					error("The connection object is not connected.");
@@ -107,24 +212,467 @@ public class RuntimeConnection extends Environment {
 			} catch (SQLException e) {				
 				error(e.getMessage());
 			}
+		}
+		
+		/**
+		 * open(table[, params...][, fields: "a, b"][, where: "x = ?"][, limit: n]):
+		 * selects from a table. The where: condition takes its values from the
+		 * other arguments as bind parameters (? or :name). Without fields: only
+		 * the columns the enclosing function reads are selected, see Projection.
+		 */
+		private Object open(ArgValue[] arguments) {
+			checkConnected();
 			
+			if (arguments == null || arguments.length == 0)
+				error("Expect the table name as first argument.");
 			String tableName = arguments[0].value.toString();
-			String query = "select * from " + tableName;
+			String fields = null;
+			String where = null;
+			int limit = 0;
+			List<ArgValue> parameters = new ArrayList<>();
+			for (int i = 1; i < arguments.length; i++) {
+				Object value = arguments[i].value;
+				switch (arguments[i].alias.toLowerCase()) {
+				case "fields":
+					if (!(value instanceof String) || !FIELD_LIST.matcher((String)value).matches())
+						error("Invalid value for `fields`, expecting column names like \"code, rate\".");
+					fields = (String)value;
+					break;
+				case "where":
+					if (!(value instanceof String) || ((String)value).isBlank())
+						error("Invalid value for `where`, expecting a condition like \"rate > ?\".");
+					where = (String)value;
+					break;
+				case "limit":
+					if (!(value instanceof Double) || (Double)value < 0)
+						error("Invalid value for `limit`, expecting a positive integer.");
+					limit = ((Double)value).intValue();
+					break;
+				case "fetchsize": case "forwardonly": case "readonly": case "ttl":
+					break;
+				default:
+					parameters.add(arguments[i]);
+				}
+			}
+			if (where == null && !parameters.isEmpty())
+				error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", 1, arguments.length));
+			ArgValue[] values = parameters.toArray(new ArgValue[0]);
 			try {
-				checkArgumentsArity(arguments, 1);
-				statement = connection.createStatement();
-				ResultSet cursor = statement.executeQuery(query);
-				return new RuntimeCursor(cursor);
+				if (fields == null)
+					fields = inferredFields(tableName);
+				String query = "select " + (fields == null ? "*" : fields) + " from " + tableName
+						+ (where == null ? "" : " where " + where);
+				// updatable cursors always read the table.
+				long ttl = Boolean.FALSE.equals(cursorOption(arguments, "readonly")) ? 0 : cacheTtl(arguments);
+				String key = ttl > 0 ? ResultCache.key(query + (limit > 0 ? " limit " + limit : ""), values, 0) : null;
+				LocalCursor cached = key != null ? resultCache().get(key) : null;
+				if (cached != null)
+					return cached;
+				StatementCache.Prepared prepared = statementCache.acquire(query, 
+						resultSetType(arguments), resultSetConcurrency(arguments));
+				StatementCache.bind(prepared.statement, prepared.parsed, values, 0);
+				prepared.statement.setFetchSize(fetchSize(arguments));
+				prepared.statement.setMaxRows(limit);
+				SqlCursor cursor = new SqlCursor(prepared.statement.executeQuery());
+				prepared.reader = cursor;
+				if (key != null)
+					return cache(key, cursor, ttl);
+				return cursor;
 			} catch (SQLException e) {
 				error(e.getMessage());
 			}
 			return null;
 		}
 		
-		private Object disconnect() {
+		// the columns of `table` this open() site reads, or null to select them all.
+		private String inferredFields(String table) throws SQLException {
+			String[] used = ((Expr.Member)callee).inferredFields;
+			if (used == null)
+				return null;
+			String[] columns = tableColumns.get(table.toLowerCase());
+			if (columns == null) {
+				try (Statement statement = connection.createStatement();
+						ResultSet empty = statement.executeQuery("select * from " + table + " where 1 = 0")) {
+					ResultSetMetaData meta = empty.getMetaData();
+					columns = new String[meta.getColumnCount()];
+					for (int i = 0; i < columns.length; i++) {
+						columns[i] = meta.getColumnLabel(i + 1);
+					}
+				}
+				tableColumns.put(table.toLowerCase(), columns);
+			}
+			List<String> kept = new ArrayList<>();
+			for (String column : columns) {
+				if (!FIELD_LIST.matcher(column).matches())
+					return null; // needs quoting.
+				for (String field : used) {
+					if (field.equalsIgnoreCase(column)) {
+						kept.add(column);
+						break;
+					}
+				}
+			}
+			if (kept.size() == columns.length)
+				return null;
+			if (kept.isEmpty() && columns.length > 0)
+				kept.add(columns[0]); // only navigation, a row still needs a column.
+			return String.join(", ", kept);
+		}
+		
+		// query(sql, args...[, ttl: seconds]): runs a select through a cached PreparedStatement.
+		// With the result cache on, the rows come back as a LocalCursor.
+		private Object query(ArgValue[] arguments) {
+			checkConnected();
 			try {
+				long ttl = cacheTtl(arguments);
+				arguments = withoutOption(arguments, "ttl");
+				String key = null;
+				if (ttl > 0 && arguments.length > 0 && arguments[0].value instanceof String) {
+					key = ResultCache.key((String)arguments[0].value, arguments, 1);
+					LocalCursor cached = resultCache().get(key);
+					if (cached != null)
+						return cached;
+				}
+				StatementCache.Prepared prepared = prepare(arguments);
+				SqlCursor cursor = new SqlCursor(prepared.statement.executeQuery());
+				prepared.reader = cursor;
+				if (key != null)
+					return cache(key, cursor, ttl);
+				return cursor;
+			} catch (SQLException e) {
+				error(e.getMessage());
+			}
+			return null;
+		}
+		
+		// fetch(sql, args...): runs the query and drains it into a LocalCursor,
+		// so the statement is released before the script reads any row.
+		private Object fetch(ArgValue[] arguments) {
+			RuntimeCursor cursor = (RuntimeCursor)query(arguments);
+			if (cursor instanceof LocalCursor)
+				return cursor; // served by the result cache.
+			cursor.setCallee(callee);
+			return cursor.materialize();
+		}
+		
+		// drains `cursor` into the result cache and returns a cursor over the cached rows.
+		private LocalCursor cache(String key, SqlCursor cursor, long ttl) {
+			cursor.setCallee(callee);
+			LocalCursor rows = cursor.materialize();
+			resultCache().put(key, rows, ttl);
+			return rows.copy();
+		}
+		
+		// milliseconds to keep the rows: the ttl: option of the call, else `resultcachettl` when
+		// `resultcache` is on. 0 means the call does not use the cache.
+		private long cacheTtl(ArgValue[] arguments) {
+			if (arguments != null) {
+				for (ArgValue arg : arguments) {
+					if (!arg.alias.equalsIgnoreCase("ttl"))
+						continue;
+					if (!(arg.value instanceof Double) || (Double)arg.value < 0)
+						error("Invalid value for `ttl`, expecting the seconds to keep the rows.");
+					return (long)((Double)arg.value * 1000);
+				}
+			}
+			if (!Boolean.TRUE.equals(lookUp("resultcache")))
+				return 0;
+			Object ttl = lookUp("resultcachettl");
+			if (!(ttl instanceof Double) || (Double)ttl < 0)
+				error("Invalid value for `resultcachettl`, expecting the seconds to keep the rows.");
+			return (long)((Double)ttl * 1000);
+		}
+		
+		private static ArgValue[] withoutOption(ArgValue[] arguments, String name) {
+			if (arguments == null)
+				return new ArgValue[0];
+			List<ArgValue> kept = new ArrayList<>(arguments.length);
+			for (ArgValue arg : arguments) {
+				if (!arg.alias.equalsIgnoreCase(name))
+					kept.add(arg);
+			}
+			return kept.toArray(new ArgValue[0]);
+		}
+		
+		private ResultCache resultCache() {
+			Object size = lookUp("resultcachesize");
+			if (!(size instanceof Double) || (Double)size < 0)
+				error("Invalid value for `resultcachesize`, expecting the size in MB.");
+			long maxBytes = (long)((Double)size * 1024 * 1024);
+			if (resultCache == null)
+				resultCache = new ResultCache(maxBytes);
+			else
+				resultCache.resize(maxBytes);
+			return resultCache;
+		}
+		
+		// invalidate([table]): drops the cached results of every query, or of those naming `table`.
+		private Object invalidate(ArgValue[] arguments) {
+			if (arguments == null || arguments.length == 0)
+				return (double)resultCache().invalidate(null);
+			if (arguments.length != 1 || !(arguments[0].value instanceof String))
+				error("Expect the table name, or no arguments to invalidate every result.");
+			return (double)resultCache().invalidate((String)arguments[0].value);
+		}
+		
+		// queryAsync(sql, args...): runs the query on another connection and returns at once, see RuntimeFuture.
+		private Object queryAsync(ArgValue[] arguments) {
+			checkConnected();
+			if (arguments == null || arguments.length == 0 || !(arguments[0].value instanceof String))
+				error("Expect the SQL statement as first argument.");
+			try {
+				return new RuntimeFuture(this, StatementCache.parse((String)arguments[0].value), arguments, fetchSize(null));
+			} catch (SQLException e) {
+				error(e.getMessage());
+			}
+			return null;
+		}
+		
+		// a connection for a background query: from the same pool, or a new one.
+		Connection acquire() throws SQLException {
+			if (pool != null)
+				return pool.borrow();
+			if (url == null)
+				throw new SQLException("The connection object is not connected.");
+			return DriverManager.getConnection(url, info);
+		}
+		
+		void release(Connection connection) throws SQLException {
+			if (pool != null)
+				pool.release(connection);
+			else
 				connection.close();
-				statement.close();
+		}
+		
+		// execute(sql, args...): returns the update count, or a cursor when the statement yields rows.
+		private Object execute(ArgValue[] arguments) {
+			checkConnected();
+			try {
+				StatementCache.Prepared prepared = prepare(arguments);
+				group();
+				boolean rows;
+				try {
+					rows = prepared.statement.execute();
+				} catch (SQLException e) {
+					// the statements before this one stay, as they would have with autocommit.
+					flushGroup();
+					throw e;
+				}
+				if (rows) {
+					SqlCursor cursor = new SqlCursor(prepared.statement.getResultSet());
+					prepared.reader = cursor;
+					return cursor;
+				}
+				double count = prepared.statement.getUpdateCount();
+				if (!prepared.cached)
+					prepared.statement.close(); // no result set to close it.
+				written(1);
+				return count;
+			} catch (SQLException e) {
+				error(e.getMessage());
+			}
+			return null;
+		}
+		
+		// turns group commit on or off as the properties say, outside explicit transactions.
+		private void group() throws SQLException {
+			if (inTransaction)
+				return;
+			boolean wanted = toInt("groupcommit") > 0 || toInt("groupcommitms") > 0;
+			if (wanted == grouping)
+				return;
+			if (wanted) {
+				connection.setAutoCommit(false);
+			} else {
+				flushGroup();
+				connection.setAutoCommit(true);
+			}
+			grouping = wanted;
+		}
+		
+		// counts statements and batch rows written while group commit holds autocommit off.
+		void written(int rows) throws SQLException {
+			if (!grouping || rows == 0)
+				return;
+			if (groupPending == 0)
+				groupStarted = System.nanoTime();
+			groupPending += rows;
+			if (groupDue())
+				flushGroup();
+		}
+		
+		private boolean groupDue() {
+			int statements = toInt("groupcommit");
+			int millis = toInt("groupcommitms");
+			return statements > 0 && groupPending >= statements
+					|| millis > 0 && System.nanoTime() - groupStarted >= millis * 1_000_000L;
+		}
+		
+		private void flushGroup() throws SQLException {
+			if (groupPending == 0)
+				return;
+			groupPending = 0;
+			connection.commit();
+		}
+		
+		// begin(), commit() and rollback() from scripts.
+		private Object transaction(String method) {
+			checkConnected();
+			if (inBlock && !method.equals("begin"))
+				error(String.format("%s() cannot be used inside a TRANSACTION block, it ends with the block.", method));
+			try {
+				switch (method) {
+				case "begin":
+					if (inTransaction)
+						error("A transaction is already open, commit() or rollback() it first.");
+					begin();
+					return true;
+				case "commit":
+					if (!inTransaction) {
+						// commits the pending group, if any.
+						boolean pending = groupPending > 0;
+						flushGroup();
+						return pending;
+					}
+					commit();
+					return true;
+				default:
+					if (!inTransaction)
+						return false;
+					rollback();
+					return true;
+				}
+			} catch (SQLException e) {
+				error(e.getMessage());
+			}
+			return null;
+		}
+		
+		// starts a transaction; grouped statements still pending are committed first.
+		void begin() throws SQLException {
+			if (connection == null || connection.isClosed())
+				throw new SQLException("The connection object is not connected.");
+			flushGroup();
+			if (!grouping)
+				connection.setAutoCommit(false);
+			grouping = false;
+			inTransaction = true;
+		}
+		
+		void commit() throws SQLException {
+			inTransaction = false;
+			try {
+				connection.commit();
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		
+		void rollback() throws SQLException {
+			inTransaction = false;
+			try {
+				connection.rollback();
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		
+		// batch(sql, size: n, transaction: .t.): a batch writer flushing every `size` rows.
+		private Object batch(ArgValue[] arguments) {
+			checkConnected();
+			if (arguments == null || arguments.length == 0 || !(arguments[0].value instanceof String))
+				error("Expect the SQL statement as first argument.");
+			int size = 1000;
+			boolean transaction = false;
+			for (int i = 1; i < arguments.length; i++) {
+				switch (arguments[i].alias.toLowerCase()) {
+				case "size":
+					if (!(arguments[i].value instanceof Double) || (Double)arguments[i].value < 1)
+						error("Invalid value for `size`, expecting a positive integer.");
+					size = ((Double)arguments[i].value).intValue();
+					break;
+				case "transaction":
+					transaction = Boolean.TRUE.equals(arguments[i].value);
+					break;
+				default:
+					error("Unknown batch option: `" + arguments[i].alias + "`");
+				}
+			}
+			try {
+				group();
+				RuntimeBatch batch = new RuntimeBatch(this, (String)arguments[0].value, size, transaction);
+				statements.add(batch.statement);
+				return batch;
+			} catch (SQLException e) {
+				error(e.getMessage());
+			}
+			return null;
+		}
+		
+		private StatementCache.Prepared prepare(ArgValue[] arguments) throws SQLException {
+			if (arguments == null || arguments.length == 0 || !(arguments[0].value instanceof String))
+				error("Expect the SQL statement as first argument.");
+			
+			StatementCache.Prepared prepared = statementCache.acquire((String)arguments[0].value, 
+					resultSetType(null), resultSetConcurrency(null));
+			StatementCache.bind(prepared.statement, prepared.parsed, arguments, 1);
+			prepared.statement.setFetchSize(fetchSize(null));
+			prepared.statement.setMaxRows(0); // open() may have limited it.
+			return prepared;
+		}
+		
+		// Cursor options come from the named arguments of the call, or the connection properties.
+		private Object cursorOption(ArgValue[] arguments, String name) {
+			if (arguments != null) {
+				for (ArgValue arg : arguments) {
+					if (arg.alias.equalsIgnoreCase(name))
+						return arg.value;
+				}
+			}
+			return lookUp(name);
+		}
+		
+		private int fetchSize(ArgValue[] arguments) {
+			Object value = cursorOption(arguments, "fetchsize");
+			if (!(value instanceof Double) || (Double)value < 0)
+				error("Invalid value for `fetchsize`, expecting a positive integer.");
+			int size = ((Double)value).intValue();
+			return size == 0 && provider != null ? provider.fetchSize() : size;
+		}
+		
+		private int resultSetType(ArgValue[] arguments) {
+			return Boolean.FALSE.equals(cursorOption(arguments, "forwardonly")) 
+					? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
+		}
+		
+		private int resultSetConcurrency(ArgValue[] arguments) {
+			return Boolean.FALSE.equals(cursorOption(arguments, "readonly")) 
+					? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY;
+		}
+		
+		private Object disconnect() {
+			if (connection == null)
+				return false;
+			try {
+				for (Statement statement : statements) {
+					statement.close();
+				}
+				statements.clear();
+				statementCache.close();
+				tableColumns.clear();
+				// an open transaction is undone, grouped statements are kept.
+				if (inTransaction)
+					rollback();
+				flushGroup();
+				if (grouping)
+					connection.setAutoCommit(true);
+				grouping = false;
+				if (pool != null) {
+					pool.release(connection);
+				} else {
+					connection.close();
+				}
+				connection = null;
 				return true;
 			} catch(Exception e) {
 				error(e.getMessage());
@@ -136,6 +684,13 @@ public class RuntimeConnection extends Environment {
 			return ((Object[])parent.record.get(property))[1];
 		}
 		
+		private int toInt(String property) {
+			Object value = lookUp(property);
+			if (!(value instanceof Double))
+				error(String.format("Invalid value for `%s`, expecting a number.", property));
+			return ((Double)value).intValue();
+		}
+		
 		private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
 			if (arguments == null || arguments.length != numberOfArgs) {
 				error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, arguments.length));			
@@ -1,25 +1,194 @@
 package core;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RuntimeCursor: a row set the script walks with next()/eof() and reads
+ * through `cursor.field`. SqlCursor reads a JDBC ResultSet, LocalCursor
+ * reads data held in memory.
+ */
+public abstract class RuntimeCursor implements CallableObject {
+	static final int NUMBER = 0;
+	static final int STRING = 1;
+	static final int BOOLEAN = 2;
+	static final int OBJECT = 3;
 
-public class RuntimeCursor implements CallableObject {
 	Expr callee;
-	final ResultSet cursor;
-	
-	public RuntimeCursor(ResultSet cursor) {
-		this.cursor = cursor;
-		try {			
-			this.cursor.next();
-		} catch (Exception e){
-			error(e.getMessage());
+	final Columns columns;
+	boolean eof; // true once the cursor moved past the last row.
+	boolean bof; // true once skip() tried to move before the first row.
+	private Object[][] block; // rows read ahead by SCAN, block[blockRow] is the current one.
+	private int blockRow;
+	private int blockCount;
+	private boolean drained; // the source moved past its last row while filling the block.
+
+	public RuntimeCursor(Columns columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Columns: field names resolved to column indexes once per cursor,
+	 * with the getter to use for each column.
+	 */
+	static class Columns {
+		final String[] names;
+		final int[] kinds;
+		private final Map<String, Integer> index = new HashMap<>();
+
+		Columns(String[] names, int[] kinds) {
+			this.names = names;
+			this.kinds = kinds;
+			for (int i = 0; i < names.length; i++) {
+				index.putIfAbsent(names[i], i + 1);
+			}
+		}
+
+		Columns(ResultSetMetaData meta) throws SQLException {
+			this(labels(meta), kinds(meta));
+		}
+
+		// 1-based column index, or 0 when the cursor has no such field.
+		int indexOf(String name) {
+			Integer i = index.get(name.toLowerCase());
+			return i == null ? 0 : i;
+		}
+
+		private static String[] labels(ResultSetMetaData meta) throws SQLException {
+			String[] names = new String[meta.getColumnCount()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = meta.getColumnLabel(i + 1).toLowerCase();
+			}
+			return names;
+		}
+
+		private static int[] kinds(ResultSetMetaData meta) throws SQLException {
+			int[] kinds = new int[meta.getColumnCount()];
+			for (int i = 0; i < kinds.length; i++) {
+				kinds[i] = kindOf(meta.getColumnType(i + 1));
+			}
+			return kinds;
+		}
+
+		private static int kindOf(int sqlType) {
+			switch (sqlType) {
+			case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+			case Types.REAL: case Types.FLOAT: case Types.DOUBLE: case Types.DECIMAL: case Types.NUMERIC:
+				return NUMBER;
+			case Types.CHAR: case Types.VARCHAR: case Types.LONGVARCHAR:
+			case Types.NCHAR: case Types.NVARCHAR: case Types.LONGNVARCHAR: case Types.CLOB:
+				return STRING;
+			case Types.BIT: case Types.BOOLEAN:
+				return BOOLEAN;
+			default:
+				return OBJECT;
+			}
+		}
+	}
+
+	// Reads a field of the current row by its 1-based column index.
+	abstract Object getValue(int index) throws SQLException;
+
+	// Moves to the next row, returns false past the last one.
+	abstract boolean advance() throws SQLException;
+
+	// Back to the first row, returns false when the cursor is empty.
+	abstract boolean rewind() throws SQLException;
+
+	abstract void release() throws SQLException;
+
+	// SEEK and SET ORDER TO, for cursors that have indexes.
+	boolean seek(Object key, String tag) {
+		throw new IllegalArgumentException("The cursor has no indexes.");
+	}
+
+	void setOrder(String tag) {
+		throw new IllegalArgumentException("The cursor has no indexes.");
+	}
+
+	/*
+	 * Rushmore support, for cursors with numbered records and indexes:
+	 * recordCount() is -1 for the others.
+	 */
+	int recordCount() {
+		return -1;
+	}
+
+	// 0-based number of the current record.
+	int rowIndex() {
+		return -1;
+	}
+
+	// moves straight to a record when walking in record order, false otherwise.
+	boolean jumpTo(int row) {
+		return false;
+	}
+
+	// tag of an index whose key is `expression` (see Rushmore.canonical), or null.
+	String indexTag(String expression) {
+		return null;
+	}
+
+	// records whose key compares to `value` with `op`, or null when the value does not fit the key.
+	BitSet indexScan(String tag, Category op, Object value) {
+		return null;
+	}
+
+	// Reads a field of the current row, from the read-ahead block when there is one.
+	final Object field(int index) throws SQLException {
+		return block != null ? block[blockRow][index - 1] : getValue(index);
+	}
+
+	/**
+	 * Copies up to `size` rows, from the current one, into a block so a
+	 * SCAN reads the source in runs instead of one call per field. The
+	 * cursor keeps its logical position: field() and next() walk the block
+	 * before going back to the source.
+	 */
+	void readAhead(int size) throws SQLException {
+		if (eof || block != null)
+			return;
+		Object[][] rows = new Object[size][];
+		int n = 0;
+		boolean more = true;
+		while (n < size && more) {
+			Object[] values = new Object[columns.names.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = getValue(i + 1);
+			}
+			rows[n++] = values;
+			more = advance();
+		}
+		block = rows;
+		blockRow = 0;
+		blockCount = n;
+		drained = !more;
+	}
+
+	// Moves to the next row, through the read-ahead block first.
+	final boolean moveNext() throws SQLException {
+		bof = false;
+		if (eof)
+			return false;
+		if (block != null) {
+			if (++blockRow < blockCount)
+				return true;
+			block = null;
+			eof = drained; // otherwise the source is already on the next row.
+		} else {
+			eof = !advance();
 		}
+		return !eof;
 	}
-	
+
 	@Override
 	public String toString() {
 		return "Cursortostring... pendiente";
 	}
-	
+
 	@Override
 	public int arity() {
 		return 0;
@@ -27,7 +196,7 @@ public class RuntimeCursor implements CallableObject {
 
 	@Override
 	public void setCallee(Expr callee) {
-		this.callee = callee;		
+		this.callee = callee;
 	}
 
 	@Override
@@ -45,23 +214,144 @@ public class RuntimeCursor implements CallableObject {
 		switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
 		case "close":
 			return close();
+		case "next":
+			return next();
+		case "eof":
+			return eof;
+		case "bof":
+			return bof;
+		case "gotop":
+			return goTop();
+		case "materialize":
+			return materialize();
+		case "groupby":
+			return groupBy(arguments);
+		case "join":
+			return join(arguments);
+		case "sort":
+			return sort(arguments);
 		default:
-			throw new RuntimeError(callee.token, "Function not defined for this data type.");			
+			throw new RuntimeError(callee.token, "Function not defined for this data type.");
+		}
+	}
+
+	// Moves to the next row, returns false when there are no more rows.
+	private Object next() {
+		try {
+			return moveNext();
+		} catch(SQLException e) {
+			error(e.getMessage());
+		}
+		return false;
+	}
+
+	private Object goTop() {
+		try {
+			block = null;
+			bof = false;
+			eof = !rewind();
+		} catch(SQLException e) {
+			error(e.getMessage());
+		}
+		return !eof;
+	}
+
+	// Copies the rows from the current one to the end into a LocalCursor and closes this one.
+	LocalCursor materialize() {
+		try {
+			LocalCursor.Builder builder = new LocalCursor.Builder(columns);
+			while (!eof) {
+				builder.addRow(this);
+				moveNext();
+			}
+			release();
+			return builder.build();
+		} catch(SQLException e) {
+			error(e.getMessage());
+		}
+		return null;
+	}
+
+	// groupby(keys, aggregates[, budget: groups]): aggregates the rows from the current one, see GroupBy.
+	private Object groupBy(ArgValue[] arguments) {
+		if (arguments == null || arguments.length < 2 || arguments.length > 3)
+			error("Wrong number of parameters/arguments. Expected: 2 or 3.");
+		if (!(arguments[0].value instanceof String) || !(arguments[1].value instanceof String))
+			error("Invalid argument type for this function, expecting the key fields and the aggregates as strings.");
+		int budget = GroupBy.DEFAULT_BUDGET;
+		if (arguments.length == 3) {
+			if (!arguments[2].alias.equalsIgnoreCase("budget") || !(arguments[2].value instanceof Double))
+				error("Invalid option, expecting budget: <groups held in memory>.");
+			budget = Math.max(1, ((Double)arguments[2].value).intValue());
 		}
+		try {
+			return new GroupBy(columns, (String)arguments[0].value, (String)arguments[1].value, budget).run(this);
+		} catch(SQLException | IOException | IllegalArgumentException e) {
+			error(e.getMessage());
+		}
+		return null;
+	}
+
+	// join(other, leftKey, rightKey[, type][, budget: rows]): joins the rows from the current ones, see Join.
+	private Object join(ArgValue[] arguments) {
+		if (arguments == null || arguments.length < 3 || arguments.length > 5)
+			error("Wrong number of parameters/arguments. Expected: 3 to 5.");
+		if (!(arguments[0].value instanceof RuntimeCursor))
+			error("Invalid argument type for this function, expecting a cursor to join with.");
+		if (!(arguments[1].value instanceof String) || !(arguments[2].value instanceof String))
+			error("Invalid argument type for this function, expecting the key fields as strings.");
+		String type = "inner";
+		int budget = Join.DEFAULT_BUDGET;
+		for (int i = 3; i < arguments.length; i++) {
+			if (arguments[i].alias.equalsIgnoreCase("budget") && arguments[i].value instanceof Double)
+				budget = Math.max(1, ((Double)arguments[i].value).intValue());
+			else if (arguments[i].alias.equals("_") && arguments[i].value instanceof String)
+				type = (String)arguments[i].value;
+			else
+				error("Invalid option, expecting the join type (inner, left, semi, anti) or budget: <rows held in memory>.");
+		}
+		RuntimeCursor other = (RuntimeCursor)arguments[0].value;
+		try {
+			return new Join(columns, other.columns, (String)arguments[1].value, (String)arguments[2].value, type, budget).run(this, other);
+		} catch(SQLException | IOException | IllegalArgumentException e) {
+			error(e.getMessage());
+		}
+		return null;
 	}
-	
+
+	// sort(keys[, budget: rows]): sorts the rows from the current one, see Sort.
+	private Object sort(ArgValue[] arguments) {
+		if (arguments == null || arguments.length < 1 || arguments.length > 2)
+			error("Wrong number of parameters/arguments. Expected: 1 or 2.");
+		if (!(arguments[0].value instanceof String))
+			error("Invalid argument type for this function, expecting the sort keys as a string.");
+		int budget = Sort.DEFAULT_BUDGET;
+		if (arguments.length == 2) {
+			if (!arguments[1].alias.equalsIgnoreCase("budget") || !(arguments[1].value instanceof Double))
+				error("Invalid option, expecting budget: <rows sorted in memory>.");
+			budget = Math.max(1, ((Double)arguments[1].value).intValue());
+		}
+		try {
+			return new Sort(columns, (String)arguments[0].value, budget).run(this);
+		} catch(SQLException | IOException | IllegalArgumentException e) {
+			error(e.getMessage());
+		}
+		return null;
+	}
+
 	private Object close() {
 		try {
-			cursor.close();
+			block = null;
+			release();
 			return true;
 		} catch(Exception e) {
 			error(e.getMessage());
 		}
 		return false;
 	}
-	
-	private void error(String msg) {
+
+	void error(String msg) {
 		throw new RuntimeError(callee.token, msg);
-	}	
-	
+	}
+
 }
@@ -0,0 +1,147 @@
+package core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * RuntimeFuture: a query running in the background, from connection.queryAsync().
+ *
+ * local a = connection.queryAsync("select ... where year = ?", 2024)
+ * local b = connection.queryAsync("select ...")
+ * local sales = a.wait() // the rows, as a local cursor
+ *
+ * Each query runs on a connection of its own, borrowed from the pool of
+ * the connection object (or opened like connect() when pooling is off),
+ * and its rows are fetched into a LocalCursor before the connection is
+ * handed back. The script goes on meanwhile; wait() blocks until the rows
+ * are there and reports the query error, if any.
+ */
+public class RuntimeFuture implements CallableObject {
+	private static final ExecutorService WORKERS = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "foxdream-query");
+		thread.setDaemon(true); // a script that never waits still ends.
+		return thread;
+	});
+
+	private final Future<LocalCursor> result;
+	private volatile PreparedStatement running; // for cancel().
+	Expr callee;
+
+	RuntimeFuture(RuntimeConnection.CallableConnection owner, StatementCache.Parsed parsed, ArgValue[] arguments, int fetchSize) {
+		this.result = WORKERS.submit(() -> run(owner, parsed, arguments, fetchSize));
+	}
+
+	private LocalCursor run(RuntimeConnection.CallableConnection owner, StatementCache.Parsed parsed,
+			ArgValue[] arguments, int fetchSize) throws SQLException {
+		Connection connection = owner.acquire();
+		try (PreparedStatement statement = connection.prepareStatement(parsed.sql)) {
+			running = statement;
+			StatementCache.bind(statement, parsed, arguments, 1);
+			statement.setFetchSize(fetchSize);
+			try (ResultSet rows = statement.executeQuery()) {
+				SqlCursor cursor = new SqlCursor(rows);
+				LocalCursor.Builder builder = new LocalCursor.Builder(cursor.columns);
+				while (!cursor.eof) {
+					if (Thread.interrupted())
+						throw new SQLException("The query was cancelled.");
+					builder.addRow(cursor);
+					cursor.moveNext();
+				}
+				return builder.build();
+			}
+		} finally {
+			running = null;
+			owner.release(connection);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Object(Future: %s)", result.isDone() ? "ready" : "running");
+	}
+
+	@Override
+	public int arity() {
+		return 0;
+	}
+
+	@Override
+	public void setCallee(Expr callee) {
+		this.callee = callee;
+	}
+
+	@Override
+	public String[] getParamInfo() {
+		return null;
+	}
+
+	@Override
+	public boolean validateArguments() {
+		return false;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+		case "wait":
+			if (arguments == null || arguments.length == 0)
+				return await(-1);
+			if (arguments.length != 1 || !(arguments[0].value instanceof Double))
+				error("Invalid argument, expecting the seconds to wait.");
+			return await((Double)arguments[0].value);
+		case "ready":
+			return result.isDone();
+		case "cancel":
+			return cancel();
+		default:
+			throw new RuntimeError(callee.token, "Function not defined for this data type.");
+		}
+	}
+
+	// wait([seconds]): the rows of the query; without seconds it waits as long as the query runs.
+	private Object await(double seconds) {
+		try {
+			if (seconds < 0)
+				return result.get();
+			return result.get((long)(seconds * 1000), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			error(String.format("The query did not finish in %s seconds.", Interpreter.stringify(seconds)));
+		} catch (CancellationException e) {
+			error("The query was cancelled.");
+		} catch (ExecutionException e) {
+			error(e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			error("Interrupted while waiting for the query.");
+		}
+		return null;
+	}
+
+	// cancel(): stops the query, false when it had already finished.
+	private Object cancel() {
+		if (result.isDone())
+			return false;
+		PreparedStatement statement = running;
+		if (statement != null) {
+			try {
+				statement.cancel();
+			} catch (SQLException e) {
+				// the interrupt below still stops the fetch loop.
+			}
+		}
+		return result.cancel(true);
+	}
+
+	private void error(String msg) {
+		throw new RuntimeError(callee.token, msg);
+	}
+}
@@ -0,0 +1,132 @@
+package core;
+
+/**
+ * RuntimeStringBuilder: a growable text buffer for scripts.
+ *
+ * createobject("stringbuilder"[, initialText][, capacity: n])
+ *
+ * Values are formatted with the same rules as Interpreter.stringify().
+ */
+public class RuntimeStringBuilder implements CallableObject {
+	private static final String INVALID_ARGUMENT_NEED_INT = "Invalid argument type for this function, expecting integer.";
+	final StringBuilder buffer;
+	private final StringBuilder scratch = new StringBuilder(); // formats insert() values.
+	Expr callee;
+
+	public RuntimeStringBuilder() {
+		this(16);
+	}
+
+	public RuntimeStringBuilder(int capacity) {
+		this.buffer = new StringBuilder(capacity);
+	}
+
+	public static RuntimeStringBuilder create(Token token, ArgValue[] arguments) {
+		int capacity = 16;
+		for (ArgValue arg : arguments) {
+			if (arg.alias.equalsIgnoreCase("capacity")) {
+				if (!(arg.value instanceof Double) || (Double)arg.value < 0)
+					throw new RuntimeError(arg.name, "Invalid value for `capacity`, expecting a positive integer.");
+				capacity = ((Double)arg.value).intValue();
+			} else if (!arg.alias.equals("_")) {
+				throw new RuntimeError(arg.name, "Unknown stringbuilder option: `" + arg.alias + "`");
+			}
+		}
+		RuntimeStringBuilder builder = new RuntimeStringBuilder(capacity);
+		for (ArgValue arg : arguments) {
+			if (arg.alias.equals("_"))
+				Interpreter.stringify(builder.buffer, arg.value);
+		}
+		return builder;
+	}
+
+	@Override
+	public String toString() {
+		return buffer.toString();
+	}
+
+	@Override
+	public int arity() {
+		return 0;
+	}
+
+	@Override
+	public void setCallee(Expr callee) {
+		this.callee = callee;
+	}
+
+	@Override
+	public String[] getParamInfo() {
+		return null;
+	}
+
+	@Override
+	public boolean validateArguments() {
+		return false;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+		case "append":
+			return append(arguments);
+		case "appendline":
+			append(arguments);
+			buffer.append('\n');
+			return this;
+		case "insert":
+			return insert(arguments);
+		case "len":
+			checkArgumentsArity(arguments, 0);
+			return (double)buffer.length();
+		case "clear":
+			checkArgumentsArity(arguments, 0);
+			buffer.setLength(0);
+			return this;
+		case "tostring":
+			checkArgumentsArity(arguments, 0);
+			return buffer.toString();
+		default:
+			throw new RuntimeError(callee.token, "Function not defined for this data type.");
+		}
+	}
+
+	// append(value1, value2, ...)
+	private Object append(ArgValue[] arguments) {
+		if (arguments != null) {
+			for (ArgValue arg : arguments) {
+				Interpreter.stringify(buffer, arg.value);
+			}
+		}
+		return this;
+	}
+
+	// insert(position, value)
+	private Object insert(ArgValue[] arguments) {
+		checkArgumentsArity(arguments, 2);
+		if (!(arguments[0].value instanceof Double))
+			error(INVALID_ARGUMENT_NEED_INT);
+		int position = ((Double)arguments[0].value).intValue();
+		if (position < 0 || position > buffer.length())
+			error(String.format("Index %s out of bounds for length %s", position, buffer.length()));
+		Object value = arguments[1].value;
+		if (value instanceof CharSequence) {
+			buffer.insert(position, (CharSequence)value);
+		} else {
+			scratch.setLength(0);
+			buffer.insert(position, Interpreter.stringify(scratch, value));
+		}
+		return this;
+	}
+
+	private void error(String msg) {
+		throw new RuntimeError(callee.token, msg);
+	}
+
+	private void checkArgumentsArity(ArgValue[] arguments, int numberOfArgs) {
+		int got = arguments == null ? 0 : arguments.length;
+		if (got != numberOfArgs) {
+			error(String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, got));
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package core;
+
+/**
+ * RuntimeVector: the script side of PersistentVector.
+ * set/add/pop return a new vector and leave the receiver untouched,
+ * transient() returns a builder whose set/add update it in place until
+ * persistent() freezes it again.
+ */
+public class RuntimeVector implements CallableObject {
+	private static final String INVALID_ARGUMENT_NEED_INT = "Invalid argument type for this function, expecting integer.";
+	private final PersistentVector vector;
+	private final PersistentVector.Transient builder; // not null while transient.
+
+	public RuntimeVector() {
+		this(PersistentVector.EMPTY);
+	}
+
+	public RuntimeVector(PersistentVector vector) {
+		this.vector = vector;
+		this.builder = null;
+	}
+
+	private RuntimeVector(PersistentVector.Transient builder) {
+		this.vector = null;
+		this.builder = builder;
+	}
+
+	// createobject("vector", ...): positional arguments are the elements.
+	public static RuntimeVector create(Token token, ArgValue[] arguments) {
+		PersistentVector.Transient builder = PersistentVector.EMPTY.asTransient();
+		for (ArgValue arg : arguments) {
+			if (!arg.alias.equals("_"))
+				throw new RuntimeError(arg.name, "Unknown vector option: `" + arg.alias + "`");
+			builder.add(arg.value);
+		}
+		return new RuntimeVector(builder.persistent());
+	}
+
+	static RuntimeVector of(Iterable<Object> elements) {
+		PersistentVector.Transient builder = PersistentVector.EMPTY.asTransient();
+		for (Object value : elements) {
+			builder.add(value);
+		}
+		return new RuntimeVector(builder.persistent());
+	}
+
+	@Override
+	public String toString() {
+		int size = size();
+		if (size > 0) {
+			String[] str = new String[size];
+			for (int i = 0; i < size; i++) {
+				str[i] = Interpreter.stringify(elementAt(i));
+			}
+			return "vector[" + String.join(", ", str) + "]";
+		}
+		return "vector[]";
+	}
+
+	@Override
+	public int arity() {
+		return 0;
+	}
+
+	// vectors are shared between interpreters, so the method is not kept
+	// here but passed to each call, see call(Interpreter, Expr, ArgValue[]).
+	@Override
+	public void setCallee(Expr callee) {
+	}
+
+	@Override
+	public String[] getParamInfo() {
+		return null;
+	}
+
+	@Override
+	public boolean validateArguments() {
+		return false;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, ArgValue[] arguments) {
+		throw new IllegalStateException("A vector method needs its callee.");
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Expr callee, ArgValue[] arguments) {
+		final Token token = callee.token;
+		try {
+			switch (((Expr.Member)callee).property.token.lexeme.toLowerCase()) {
+			case "get":
+				checkArgumentsArity(token, arguments, 1);
+				return elementAt(toIndex(token, arguments[0]));
+			case "len":
+				checkArgumentsArity(token, arguments, 0);
+				return (double)size();
+			case "contains":
+				checkArgumentsArity(token, arguments, 1);
+				return indexOf(arguments[0].value) >= 0;
+			case "indexof":
+				checkArgumentsArity(token, arguments, 1);
+				return (double)indexOf(arguments[0].value);
+			case "set":
+				checkArgumentsArity(token, arguments, 2);
+				if (builder != null) {
+					builder.set(toIndex(token, arguments[0]), arguments[1].value);
+					return this;
+				}
+				return new RuntimeVector(vector.set(toIndex(token, arguments[0]), arguments[1].value));
+			case "add":
+				checkArgumentsArity(token, arguments, 1);
+				if (builder != null) {
+					builder.add(arguments[0].value);
+					return this;
+				}
+				return new RuntimeVector(vector.add(arguments[0].value));
+			case "pop":
+				checkArgumentsArity(token, arguments, 0);
+				checkPersistent(token);
+				return new RuntimeVector(vector.pop());
+			case "transient":
+				checkArgumentsArity(token, arguments, 0);
+				checkPersistent(token);
+				return new RuntimeVector(vector.asTransient());
+			case "persistent":
+				checkArgumentsArity(token, arguments, 0);
+				if (builder == null)
+					return this;
+				return new RuntimeVector(builder.persistent());
+			case "toarray":
+				checkArgumentsArity(token, arguments, 0);
+				ArgValue[] values = new ArgValue[size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = new ArgValue(token, "_", elementAt(i));
+				}
+				return RuntimeArray.create(token, values);
+			default:
+				throw new RuntimeError(token, "Function not defined for this data type.");
+			}
+		} catch (IndexOutOfBoundsException | IllegalStateException e) {
+			error(token, e.getMessage());
+		}
+		return null;
+	}
+
+	private int size() {
+		return builder != null ? builder.count() : vector.count;
+	}
+
+	private Object elementAt(int i) {
+		return builder != null ? builder.get(i) : vector.get(i);
+	}
+
+	private int indexOf(Object value) {
+		if (builder == null)
+			return vector.indexOf(value);
+		for (int i = 0; i < builder.count(); i++) {
+			if (value == null ? builder.get(i) == null : value.equals(builder.get(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	private void checkPersistent(Token token) {
+		if (builder != null)
+			error(token, "Not available on a transient vector, call persistent() first.");
+	}
+
+	private static int toIndex(Token token, ArgValue arg) {
+		if (!(arg.value instanceof Double))
+			error(token, INVALID_ARGUMENT_NEED_INT);
+		return ((Double)arg.value).intValue();
+	}
+
+	private static void error(Token token, String msg) {
+		throw new RuntimeError(token, msg);
+	}
+
+	private static void checkArgumentsArity(Token token, ArgValue[] arguments, int numberOfArgs) {
+		int got = arguments == null ? 0 : arguments.length;
+		if (got != numberOfArgs) {
+			error(token, String.format("Wrong number of parameters/arguments. Expected: %s, got: %s.", numberOfArgs, got));
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Rushmore: plans the FOR condition of a SCAN over an indexed cursor.
+ *
+ * Comparisons between an indexed expression and a value known before the
+ * loop are answered from the index as a bitmap of record numbers, and
+ * combined through .AND., .OR. and ! like FoxPro's Rushmore. The SCAN
+ * then only binds and tests the records whose bit is set; the condition
+ * is still evaluated on them, so a partial plan gives the same results.
+ *
+ * sys(3054, 1) prints the optimization level of every planned SCAN.
+ */
+public class Rushmore {
+	static int diagnostics = 0; // SYS(3054) setting.
+
+	/**
+	 * Plan: candidate records of a SCAN FOR.
+	 */
+	static class Plan {
+		final BitSet rows;
+		final boolean full; // every comparison came from an index.
+		final int count;
+
+		Plan(BitSet rows, boolean full, int count) {
+			this.rows = rows;
+			this.full = full;
+			this.count = count;
+		}
+	}
+
+	// a sub-condition as a bitmap; `exact` when it holds no more rows than the condition.
+	private static class Bits {
+		final BitSet rows;
+		final boolean exact;
+
+		Bits(BitSet rows, boolean exact) {
+			this.rows = rows;
+			this.exact = exact;
+		}
+	}
+
+	private final RuntimeCursor cursor;
+	private final String alias;
+	private final Function<Expr, Object> evaluate;
+	private final int count;
+	private final List<String> tags = new ArrayList<>();
+
+	private Rushmore(RuntimeCursor cursor, String alias, Function<Expr, Object> evaluate) {
+		this.cursor = cursor;
+		this.alias = alias;
+		this.evaluate = evaluate;
+		this.count = cursor.recordCount();
+	}
+
+	/**
+	 * Returns null when no part of the condition can use an index. `alias`
+	 * is the variable naming the cursor in the SCAN, so `c.field` is read
+	 * as a field like the bare `field`.
+	 */
+	static Plan plan(Expr condition, RuntimeCursor cursor, String alias, Function<Expr, Object> evaluate) {
+		if (cursor.recordCount() < 0)
+			return null;
+		Rushmore planner = new Rushmore(cursor, alias, evaluate);
+		Bits bits = planner.visit(condition);
+		Plan plan = bits == null ? null : new Plan(bits.rows, bits.exact, planner.count);
+		if (diagnostics > 0) {
+			String name = alias == null ? "cursor" : alias;
+			System.out.println(String.format("Rushmore optimization level for %s: %s", name,
+					plan == null ? "none" : plan.full ? "full" : "partial"));
+			for (String tag : planner.tags) {
+				System.out.println(String.format("Using index tag %s to rushmore optimize %s", tag, name));
+			}
+		}
+		return plan;
+	}
+
+	private Bits visit(Expr expr) {
+		if (expr instanceof Expr.Logical) {
+			Expr.Logical logical = (Expr.Logical)expr;
+			Bits left = visit(logical.left);
+			Bits right = visit(logical.right);
+			if (logical.operator.kind == Kind.LOGICAL_AND) {
+				if (left == null || right == null)
+					return left == null ? partial(right) : partial(left);
+				left.rows.and(right.rows);
+				return new Bits(left.rows, left.exact && right.exact);
+			}
+			if (left == null || right == null)
+				return null;
+			left.rows.or(right.rows);
+			return new Bits(left.rows, left.exact && right.exact);
+		}
+		if (expr instanceof Expr.Unary && expr.token.category == Category.BANG) {
+			// the complement of a superset is not a superset.
+			Bits inner = visit(((Expr.Unary)expr).right);
+			if (inner == null || !inner.exact)
+				return null;
+			inner.rows.flip(0, count);
+			return inner;
+		}
+		if (expr instanceof Expr.Binary)
+			return comparison((Expr.Binary)expr);
+		return null;
+	}
+
+	private static Bits partial(Bits bits) {
+		return bits == null ? null : new Bits(bits.rows, false);
+	}
+
+	// <indexed expression> <op> <value>, either way round.
+	private Bits comparison(Expr.Binary expr) {
+		Category op = expr.token.category;
+		switch (op) {
+		case EQUAL: case NOT_EQ: case LESS: case LESS_EQ: case GREATER: case GREATER_EQ:
+			break;
+		default:
+			return null;
+		}
+		Bits bits = lookup(expr.left, op, expr.right);
+		if (bits == null)
+			bits = lookup(expr.right, flip(op), expr.left);
+		return bits;
+	}
+
+	private Bits lookup(Expr indexed, Category op, Expr other) {
+		String expression = canonical(indexed, alias, cursor.columns);
+		if (expression == null || !isConstant(other))
+			return null;
+		String tag = cursor.indexTag(expression);
+		if (tag == null)
+			return null;
+		Object value;
+		try {
+			value = evaluate.apply(other);
+		} catch (RuntimeError e) {
+			return null; // the loop reports it.
+		}
+		boolean not = op == Category.NOT_EQ;
+		BitSet rows = cursor.indexScan(tag, not ? Category.EQUAL : op, value);
+		if (rows == null)
+			return null;
+		if (not)
+			rows.flip(0, count);
+		if (!tags.contains(tag))
+			tags.add(tag);
+		return new Bits(rows, true);
+	}
+
+	private static Category flip(Category op) {
+		switch (op) {
+		case LESS: return Category.GREATER;
+		case LESS_EQ: return Category.GREATER_EQ;
+		case GREATER: return Category.LESS;
+		case GREATER_EQ: return Category.LESS_EQ;
+		default: return op;
+		}
+	}
+
+	// a value that does not depend on the current record.
+	private boolean isConstant(Expr expr) {
+		if (expr instanceof Expr.Literal)
+			return true;
+		if (expr instanceof Expr.Identifier)
+			return cursor.columns.indexOf(expr.token.lexeme) == 0;
+		if (expr instanceof Expr.Unary)
+			return isConstant(((Expr.Unary)expr).right);
+		if (expr instanceof Expr.Binary)
+			return isConstant(((Expr.Binary)expr).left) && isConstant(((Expr.Binary)expr).right);
+		if (expr instanceof Expr.Member) {
+			Expr.Member member = (Expr.Member)expr;
+			return !member.computed && !isAlias(member.parentObject, alias) && isConstant(member.parentObject);
+		}
+		return false;
+	}
+
+	/**
+	 * Writes an expression over the cursor fields in one spelling, so the
+	 * SCAN condition can be matched with index keys: lower case, no
+	 * blanks, no alias. Returns null for expressions not made only of
+	 * fields, literals, operators and function calls.
+	 */
+	static String canonical(Expr expr, String alias, RuntimeCursor.Columns columns) {
+		if (expr instanceof Expr.Identifier) {
+			String name = expr.token.lexeme.toLowerCase();
+			return columns.indexOf(name) > 0 ? name : null;
+		}
+		if (expr instanceof Expr.Member) {
+			Expr.Member member = (Expr.Member)expr;
+			String name = member.property.token.lexeme.toLowerCase();
+			if (member.computed || !isAlias(member.parentObject, alias) || columns.indexOf(name) == 0)
+				return null;
+			return name;
+		}
+		if (expr instanceof Expr.Literal) {
+			Object value = expr.token.literal;
+			return value instanceof String ? "\"" + value + "\"" : Interpreter.stringify(value).toLowerCase();
+		}
+		if (expr instanceof Expr.Unary) {
+			String inner = canonical(((Expr.Unary)expr).right, alias, columns);
+			return inner == null ? null : expr.token.lexeme + inner;
+		}
+		if (expr instanceof Expr.Binary) {
+			String left = canonical(((Expr.Binary)expr).left, alias, columns);
+			String right = canonical(((Expr.Binary)expr).right, alias, columns);
+			return left == null || right == null ? null : left + expr.token.lexeme + right;
+		}
+		if (expr instanceof Expr.Call) {
+			Expr.Call call = (Expr.Call)expr;
+			if (!(call.callee instanceof Expr.Identifier))
+				return null;
+			List<String> args = new ArrayList<>();
+			for (Expr.NamedExp arg : call.arguments) {
+				String text = canonical(arg.value, alias, columns);
+				if (text == null)
+					return null;
+				args.add(text);
+			}
+			return call.callee.token.lexeme.toLowerCase() + "(" + String.join(",", args) + ")";
+		}
+		return null;
+	}
+
+	// the same spelling for a FoxPro key expression stored in an index file.
+	static String canonical(String expression) {
+		return expression.replaceAll("\\s+", "").toLowerCase().replaceAll("\\b[a-z_]\\w*\\.(?=[a-z_])", "");
+	}
+
+	private static boolean isAlias(Expr expr, String alias) {
+		return alias != null && expr instanceof Expr.Identifier && expr.token.lexeme.equalsIgnoreCase(alias);
+	}
+}
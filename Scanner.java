@@ -135,6 +135,8 @@ public class Scanner {
         new Spec(Pattern.compile("^\\brelease\\b", Pattern.CASE_INSENSITIVE), Kind.RELEASE, Category.KEYWORD),
         new Spec(Pattern.compile("^\\bdefer\\b", Pattern.CASE_INSENSITIVE), Kind.DEFER, Category.KEYWORD),
         new Spec(Pattern.compile("^\\benddefer\\b", Pattern.CASE_INSENSITIVE), Kind.ENDDEFER, Category.KEYWORD),
+        new Spec(Pattern.compile("^\\bscan\\b", Pattern.CASE_INSENSITIVE), Kind.SCAN, Category.KEYWORD),
+        new Spec(Pattern.compile("^\\bendscan\\b", Pattern.CASE_INSENSITIVE), Kind.ENDSCAN, Category.KEYWORD),
 
         // -----------------------------------------------------------
         // Assignment operators: =, +=, -=, *=, /=
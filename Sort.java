@@ -0,0 +1,237 @@
+package core;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort: cursor.sort(keys), keys like "region, amount desc".
+ *
+ * Up to `budget` rows are sorted in memory into a LocalCursor. Larger
+ * inputs are cut into sorted runs of `budget` rows written to temporary
+ * files, and the result is a cursor that merges the runs as it is read,
+ * so a SCAN over it starts as soon as the runs are written. More than
+ * FAN_IN runs are first merged into longer ones.
+ *
+ * The sort is stable and nulls come first in ascending order, as in
+ * INDEX ON.
+ */
+public class Sort {
+	static final int DEFAULT_BUDGET = 1 << 20; // rows sorted in memory.
+	private static final int FAN_IN = 64; // runs merged at once.
+
+	private final RuntimeCursor.Columns columns;
+	private final int[] keys; // 0-based columns.
+	private final boolean[] descending;
+	private final int budget;
+	private final Comparator<Object[]> order;
+
+	/**
+	 * Throws IllegalArgumentException for unknown fields.
+	 */
+	Sort(RuntimeCursor.Columns columns, String keys, int budget) {
+		this.columns = columns;
+		this.budget = budget;
+		String[] parts = keys.split(",");
+		this.keys = new int[parts.length];
+		this.descending = new boolean[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			String[] words = parts[i].trim().toLowerCase().split("\\s+");
+			if (words.length > 2 || (words.length == 2 && !words[1].equals("asc") && !words[1].equals("desc")))
+				throw new IllegalArgumentException(String.format("Invalid sort key `%s`, expecting field [asc|desc].", parts[i].trim()));
+			int column = columns.indexOf(words[0]);
+			if (column == 0)
+				throw new IllegalArgumentException(String.format("Field not found `%s`", words[0]));
+			this.keys[i] = column - 1;
+			this.descending[i] = words.length == 2 && words[1].equals("desc");
+		}
+		this.order = this::compare;
+	}
+
+	private int compare(Object[] a, Object[] b) {
+		for (int i = 0; i < keys.length; i++) {
+			int c = compareValues(a[keys[i]], b[keys[i]]);
+			if (c != 0)
+				return descending[i] ? -c : c;
+		}
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Object a, Object b) {
+		if (a == null || b == null || a.getClass() != b.getClass() || !(a instanceof Comparable))
+			return CursorIndex.compare(a, b);
+		return ((Comparable<Object>)a).compareTo(b);
+	}
+
+	/**
+	 * Sorts the rows of `cursor` from the current one to the end.
+	 */
+	RuntimeCursor run(RuntimeCursor cursor) throws SQLException, IOException {
+		List<Object[]> rows = new ArrayList<>();
+		List<SpillFile> runs = new ArrayList<>();
+		try {
+			while (!cursor.eof) {
+				Object[] row = new Object[columns.names.length];
+				for (int i = 0; i < row.length; i++) {
+					row[i] = cursor.field(i + 1);
+				}
+				rows.add(row);
+				cursor.moveNext();
+				if (rows.size() == budget) {
+					runs.add(write(rows));
+					rows = new ArrayList<>();
+				}
+			}
+			if (runs.isEmpty()) {
+				rows.sort(order);
+				LocalCursor.Builder builder = new LocalCursor.Builder(columns);
+				for (Object[] row : rows) {
+					builder.addRow(row);
+				}
+				return builder.build();
+			}
+			if (!rows.isEmpty())
+				runs.add(write(rows));
+			rows = null;
+
+			// the earliest runs are merged first and stay in front, which keeps the sort stable.
+			while (runs.size() > FAN_IN) {
+				List<SpillFile> group = runs.subList(0, FAN_IN);
+				Merge merge = new Merge(new ArrayList<>(group));
+				SpillFile merged = new SpillFile(columns.names.length);
+				group.clear();
+				runs.add(0, merged);
+				Object[] row;
+				while ((row = merge.next()) != null) {
+					merged.write(row);
+				}
+				merge.close();
+			}
+			return new MergeCursor(columns, new Merge(runs));
+		} catch (SQLException | IOException | RuntimeException e) {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			throw e;
+		}
+	}
+
+	private SpillFile write(List<Object[]> rows) throws IOException {
+		rows.sort(order);
+		SpillFile run = new SpillFile(columns.names.length);
+		for (Object[] row : rows) {
+			run.write(row);
+		}
+		return run;
+	}
+
+	/**
+	 * Merge: k-way merge of sorted runs through a heap of their first rows.
+	 */
+	private class Merge {
+		private final List<SpillFile> runs;
+		private final PriorityQueue<Head> heads;
+
+		Merge(List<SpillFile> runs) throws IOException {
+			this.runs = runs;
+			this.heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+				int c = order.compare(a.row, b.row);
+				return c != 0 ? c : Integer.compare(a.run, b.run);
+			});
+			for (int i = 0; i < runs.size(); i++) {
+				runs.get(i).rewind();
+				Object[] row = runs.get(i).read();
+				if (row != null)
+					heads.add(new Head(row, i));
+			}
+		}
+
+		// the next row in order, or null once every run is read.
+		Object[] next() throws IOException {
+			Head head = heads.poll();
+			if (head == null)
+				return null;
+			Object[] row = head.row;
+			head.row = runs.get(head.run).read();
+			if (head.row != null)
+				heads.add(head);
+			return row;
+		}
+
+		void close() {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			heads.clear();
+		}
+	}
+
+	private static class Head {
+		Object[] row;
+		final int run;
+
+		Head(Object[] row, int run) {
+			this.row = row;
+			this.run = run;
+		}
+	}
+
+	/**
+	 * MergeCursor: a forward-only cursor over the merged runs; the files
+	 * are deleted when it reaches the end or is closed.
+	 */
+	static class MergeCursor extends RuntimeCursor {
+		private final Merge merge;
+		private Object[] current;
+
+		MergeCursor(Columns columns, Merge merge) throws IOException {
+			super(columns);
+			this.merge = merge;
+			this.current = merge.next();
+			this.eof = current == null;
+			if (eof)
+				merge.close();
+		}
+
+		@Override
+		public String toString() {
+			return "Object(Cursor: sorted)";
+		}
+
+		@Override
+		Object getValue(int index) {
+			if (current == null)
+				throw new IllegalStateException("No current row, the cursor is at end of file.");
+			return current[index - 1];
+		}
+
+		@Override
+		boolean advance() throws SQLException {
+			try {
+				current = merge.next();
+			} catch (IOException e) {
+				merge.close();
+				throw new SQLException("Cannot read the sort runs: " + e.getMessage());
+			}
+			if (current == null)
+				merge.close();
+			return current != null;
+		}
+
+		@Override
+		boolean rewind() {
+			error("Cannot go back on a sorted cursor read from disk, use materialize() to keep it in memory.");
+			return false;
+		}
+
+		@Override
+		void release() {
+			current = null;
+			merge.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SpillFile: rows an operator could not keep within its memory budget
+ * (GroupBy, Join), written to a temporary file and read back once, in
+ * order, after rewind().
+ *
+ * Rows are split into PARTITIONS files by key hash; partition() takes
+ * other bits of the hash at every depth, so an oversized partition splits
+ * again when it is reloaded.
+ */
+class SpillFile {
+	static final int PARTITIONS = 16;
+	static final int MAX_DEPTH = 4; // deeper partitions stay in memory whatever their size.
+
+	private final File file;
+	private final int width;
+	private ObjectOutputStream out;
+	private ObjectInputStream in;
+	private int rows = 0;
+	private int read = 0;
+
+	SpillFile(int width) throws IOException {
+		this.width = width;
+		this.file = File.createTempFile("foxdream-spill", ".tmp");
+		file.deleteOnExit(); // for cursors the script never reads to the end.
+		this.out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	}
+
+	static int partition(int hash, int depth) {
+		int h = hash * 0x9E3779B9;
+		return (h >>> (28 - 4 * depth)) & (PARTITIONS - 1);
+	}
+
+	int size() {
+		return rows;
+	}
+
+	void write(Object[] row) throws IOException {
+		for (int i = 0; i < width; i++) {
+			write(row[i]);
+		}
+		rows++;
+	}
+
+	// ends the writing, read() then returns the rows from the first one.
+	void rewind() throws IOException {
+		out.close();
+		out = null;
+		in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	// the next row, or null past the last one.
+	Object[] read() throws IOException {
+		if (read == rows)
+			return null;
+		Object[] row = new Object[width];
+		try {
+			for (int i = 0; i < width; i++) {
+				row[i] = readValue();
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.getMessage());
+		} catch (EOFException e) {
+			throw new IOException("Spill file truncated: " + file);
+		}
+		read++;
+		return row;
+	}
+
+	void delete() {
+		try {
+			if (out != null)
+				out.close();
+			if (in != null)
+				in.close();
+		} catch (IOException e) {
+			// the file is deleted anyway.
+		}
+		out = null;
+		in = null;
+		file.delete();
+	}
+
+	private void write(Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(0);
+		} else if (value instanceof Double) {
+			out.writeByte(1);
+			out.writeDouble((Double)value);
+		} else if (value instanceof String) {
+			byte[] text = ((String)value).getBytes(StandardCharsets.UTF_8);
+			out.writeByte(2);
+			out.writeInt(text.length);
+			out.write(text);
+		} else if (value instanceof Boolean) {
+			out.writeByte(3);
+			out.writeBoolean((Boolean)value);
+		} else {
+			// dates and other JDBC values.
+			out.writeByte(4);
+			out.writeObject(value);
+			out.reset();
+		}
+	}
+
+	private Object readValue() throws IOException, ClassNotFoundException {
+		switch (in.readByte()) {
+		case 0:
+			return null;
+		case 1:
+			return in.readDouble();
+		case 2:
+			byte[] text = new byte[in.readInt()];
+			in.readFully(text);
+			return new String(text, StandardCharsets.UTF_8);
+		case 3:
+			return in.readBoolean();
+		default:
+			return in.readObject();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * SqlCursor: a RuntimeCursor reading a JDBC ResultSet row by row.
+ */
+public class SqlCursor extends RuntimeCursor {
+	final ResultSet cursor;
+	// set while the variable holding this cursor is being assigned, so
+	// StatementCache.acquire() may close it and reuse its statement.
+	boolean replacing = false;
+	boolean shared = false; // copied to another variable, so never replaced.
+
+	public SqlCursor(ResultSet cursor) throws SQLException {
+		super(new Columns(cursor.getMetaData()));
+		this.cursor = cursor;
+		this.eof = !this.cursor.next();
+		if (eof)
+			drained();
+	}
+
+	@Override
+	Object getValue(int index) throws SQLException {
+		switch (columns.kinds[index - 1]) {
+		case NUMBER:
+			double number = cursor.getDouble(index);
+			return cursor.wasNull() ? null : number;
+		case STRING:
+			return cursor.getString(index);
+		case BOOLEAN:
+			boolean bool = cursor.getBoolean(index);
+			return cursor.wasNull() ? null : bool;
+		default:
+			return cursor.getObject(index);
+		}
+	}
+
+	@Override
+	boolean advance() throws SQLException {
+		if (cursor.next())
+			return true;
+		drained();
+		return false;
+	}
+
+	// a forward-only cursor read to the end gives its statement back.
+	private void drained() throws SQLException {
+		if (cursor.getType() == ResultSet.TYPE_FORWARD_ONLY)
+			cursor.close();
+	}
+
+	// only for cursors opened with forwardonly = .f.
+	@Override
+	boolean rewind() throws SQLException {
+		if (cursor.getType() == ResultSet.TYPE_FORWARD_ONLY)
+			error("Cannot go back on a forward-only cursor.");
+		return cursor.first();
+	}
+
+	@Override
+	void release() throws SQLException {
+		cursor.close();
+	}
+}
@@ -0,0 +1,215 @@
+package core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StatementCache: a per-connection LRU cache of prepared statements keyed
+ * by the SQL text and cursor type, so queries repeated inside loops are parsed only once
+ * on both the client and the server.
+ *
+ * Named parameters (:name) are rewritten to positional ones (?) once, when
+ * the statement is first prepared.
+ */
+public class StatementCache {
+
+	/**
+	 * Parsed: the JDBC text of a statement and its parameter layout.
+	 */
+	static class Parsed {
+		final String sql;
+		final List<String> names; // empty for positional statements.
+		final int parameterCount;
+
+		Parsed(String sql, List<String> names, int parameterCount) {
+			this.sql = sql;
+			this.names = names;
+			this.parameterCount = parameterCount;
+		}
+	}
+
+	/**
+	 * Prepared: a statement ready to be bound and executed.
+	 */
+	static class Prepared {
+		final Parsed parsed;
+		final PreparedStatement statement;
+		final boolean cached;
+		SqlCursor reader; // the cursor still reading from this statement.
+
+		Prepared(Parsed parsed, PreparedStatement statement, boolean cached) {
+			this.parsed = parsed;
+			this.statement = statement;
+			this.cached = cached;
+		}
+	}
+
+	private final Connection connection;
+	private final int capacity;
+	private final LinkedHashMap<String, Prepared> cache;
+	long hits = 0;
+	long misses = 0;
+
+	public StatementCache(Connection connection, int capacity) {
+		this.connection = connection;
+		this.capacity = Math.max(0, capacity);
+		this.cache = new LinkedHashMap<String, Prepared>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Prepared> eldest) {
+				if (size() > StatementCache.this.capacity) {
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached statement for `sql`. Its previous cursor is closed
+	 * when it was read to the end, closed, or is being replaced in the
+	 * variable that holds it. When it is still feeding an open cursor a
+	 * one-off statement is prepared instead, so re-executing never closes a
+	 * result set the script is reading; one-offs close themselves with
+	 * their result set.
+	 */
+	public Prepared acquire(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		String key = resultSetType + ":" + resultSetConcurrency + ":" + sql;
+		Prepared prepared = cache.get(key);
+		if (prepared != null) {
+			SqlCursor reader = prepared.reader;
+			if (reader == null || reader.cursor.isClosed() || reader.replacing) {
+				if (reader != null)
+					reader.release();
+				prepared.reader = null;
+				hits++;
+				prepared.statement.clearParameters();
+				return prepared;
+			}
+			misses++;
+			PreparedStatement statement = connection.prepareStatement(prepared.parsed.sql, resultSetType, resultSetConcurrency);
+			statement.closeOnCompletion();
+			return new Prepared(prepared.parsed, statement, false);
+		}
+		misses++;
+		Parsed parsed = parse(sql);
+		prepared = new Prepared(parsed, connection.prepareStatement(parsed.sql, resultSetType, resultSetConcurrency), capacity > 0);
+		if (prepared.cached) {
+			cache.put(key, prepared);
+		} else {
+			prepared.statement.closeOnCompletion();
+		}
+		return prepared;
+	}
+
+	public void close() {
+		Iterator<Prepared> it = cache.values().iterator();
+		while (it.hasNext()) {
+			closeQuietly(it.next());
+			it.remove();
+		}
+	}
+
+	private static void closeQuietly(Prepared prepared) {
+		try {
+			prepared.statement.close();
+		} catch (SQLException e) {
+			// the connection is going away anyway.
+		}
+	}
+
+	/**
+	 * Binds arguments[first..] to the statement, by position or by :name.
+	 */
+	static void bind(PreparedStatement statement, Parsed parsed, ArgValue[] arguments, int first) throws SQLException {
+		int given = arguments == null ? 0 : arguments.length - first;
+
+		if (parsed.names.isEmpty()) {
+			if (given != parsed.parameterCount)
+				throw new SQLException(String.format("Wrong number of SQL parameters. Expected: %s, got: %s.", parsed.parameterCount, given));
+			for (int i = first; i < first + given; i++) {
+				if (!arguments[i].alias.equals("_"))
+					throw new SQLException("Named argument `" + arguments[i].alias + "` used with positional SQL parameters.");
+				setParameter(statement, i - first + 1, arguments[i].value);
+			}
+			return;
+		}
+
+		final Map<String, Object> values = new HashMap<>();
+		for (int i = first; i < first + given; i++) {
+			if (arguments[i].alias.equals("_"))
+				throw new SQLException("Expect named arguments for SQL statement with named parameters.");
+			values.put(arguments[i].alias.toLowerCase(), arguments[i].value);
+		}
+		for (int i = 0; i < parsed.names.size(); i++) {
+			String name = parsed.names.get(i);
+			if (!values.containsKey(name))
+				throw new SQLException("Missing SQL parameter `:" + name + "`");
+			setParameter(statement, i + 1, values.get(name));
+		}
+	}
+
+	static void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+		if (value == null) {
+			statement.setNull(index, Types.NULL);
+		} else if (value instanceof Double) {
+			statement.setDouble(index, (Double)value);
+		} else if (value instanceof String) {
+			statement.setString(index, (String)value);
+		} else if (value instanceof Boolean) {
+			statement.setBoolean(index, (Boolean)value);
+		} else {
+			statement.setObject(index, value);
+		}
+	}
+
+	/**
+	 * Rewrites :name parameters to ? and counts the placeholders, skipping
+	 * quoted text and :: casts. A statement uses either named or positional
+	 * parameters, not both.
+	 */
+	static Parsed parse(String sql) throws SQLException {
+		final StringBuilder out = new StringBuilder(sql.length());
+		final List<String> names = new ArrayList<>();
+		int positional = 0;
+		int length = sql.length();
+		int i = 0;
+
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"' || c == '`') {
+				int end = sql.indexOf(c, i + 1);
+				end = end < 0 ? length : end + 1;
+				out.append(sql, i, end);
+				i = end;
+			} else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+				out.append("::");
+				i += 2;
+			} else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+				int end = i + 1;
+				while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) end++;
+				names.add(sql.substring(i + 1, end).toLowerCase());
+				out.append('?');
+				i = end;
+			} else {
+				if (c == '?') positional++;
+				out.append(c);
+				i++;
+			}
+		}
+		if (positional > 0 && names.size() > 0)
+			throw new SQLException("Cannot mix named and positional parameters.");
+
+		return new Parsed(out.toString(), names, positional + names.size());
+	}
+}
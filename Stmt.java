@@ -1,6 +1,7 @@
 package core;
 
 import java.util.List;
+import java.util.Set;
 
 import core.Expr.Visitor;
 
@@ -33,6 +34,11 @@ public abstract class Stmt {
 		R visitModuleStmt(Module stmt);
 		R visitReleaseStmt(Release stmt);
 		R visitDeferStmt(Defer stmt);
+		R visitScanStmt(Scan stmt);
+		R visitIndexStmt(Index stmt);
+		R visitSeekStmt(Seek stmt);
+		R visitSetOrderStmt(SetOrder stmt);
+		R visitTransactionStmt(Transaction stmt);
 	}
 	/**
 	 * Assignment
@@ -444,5 +450,105 @@ public abstract class Stmt {
 		}
 	}
 	
+	/**
+	 * Scan: SCAN <cursor> [FOR <condition>] ... ENDSCAN, from the current row to the end.
+	 */
+	static class Scan extends Stmt {
+		final Expr cursor;
+		final Expr condition;
+		final Block block;
+		// the names the loop may read as fields, see Projection.reads().
+		boolean analyzed = false;
+		Set<String> reads; // null when they cannot be known.
+		
+		public Scan(Token token, Expr cursor, Expr condition, Block block) {
+			super(token);
+			this.cursor = cursor;
+			this.condition = condition;
+			this.block = block;
+		}
+		
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitScanStmt(this);
+		}
+	}
+	/**
+	 * Index: INDEX ON <expr> TAG <name> IN <cursor>
+	 */
+	static class Index extends Stmt {
+		final Expr key;
+		final Token tag;
+		final Expr cursor;
+		
+		public Index(Token token, Expr key, Token tag, Expr cursor) {
+			super(token);
+			this.key = key;
+			this.tag = tag;
+			this.cursor = cursor;
+		}
+		
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIndexStmt(this);
+		}
+	}
+	/**
+	 * Seek: SEEK <expr> [TAG <name>] IN <cursor>
+	 */
+	static class Seek extends Stmt {
+		final Expr key;
+		final Token tag;
+		final Expr cursor;
+		
+		public Seek(Token token, Expr key, Token tag, Expr cursor) {
+			super(token);
+			this.key = key;
+			this.tag = tag;
+			this.cursor = cursor;
+		}
+		
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSeekStmt(this);
+		}
+	}
+	/**
+	 * SetOrder: SET ORDER TO [[TAG] <name>] IN <cursor>
+	 */
+	static class SetOrder extends Stmt {
+		final Token tag;
+		final Expr cursor;
+		
+		public SetOrder(Token token, Token tag, Expr cursor) {
+			super(token);
+			this.tag = tag;
+			this.cursor = cursor;
+		}
+		
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSetOrderStmt(this);
+		}
+	}
+	/**
+	 * Transaction: TRANSACTION <connection> ... ENDTRANSACTION
+	 */
+	static class Transaction extends Stmt {
+		final Expr connection;
+		final Block block;
+		
+		public Transaction(Token token, Expr connection, Block block) {
+			super(token);
+			this.connection = connection;
+			this.block = block;
+		}
+		
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitTransactionStmt(this);
+		}
+	}
+	
 	abstract <R> R accept(Visitor<R> visitor);
 }